@@ -18,12 +18,16 @@
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.image.ImageView;
@@ -33,9 +37,10 @@ import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import javafx.stage.Stage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageReader;
 
 /**
  * A JavaFX animation to test the support for a WritableImage backed by a
@@ -58,44 +63,161 @@ public class Animator extends Application {
 
     private static final String TITLE = "Animator";
     private static final String IMAGE = "duke-waving.gif";
+    private static final int BUFFER_COUNT = 3;
+    private static final long CACHE_BUDGET = Long.getLong("animator.cache.bytes", 64L * 1024 * 1024);
+    private static final boolean STREAMING = Boolean.getBoolean("animator.streaming");
+    private static final int RING_SIZE = 4;
+    private static final String MAPPED = System.getProperty("animator.mapped");
+    private static final boolean DIRECT = Boolean.getBoolean("animator.direct");
+    private static final long HUD_INTERVAL = 250_000_000L;
 
     private final ArrayList<BufferedImage> frames;
+    private final int[] delays;
+    private final FrameCache cache;
+    private final FrameStream stream;
+    private final MappedFrames mapped;
+    private final GifDecoder gif;
     private final int width;
     private final int height;
+    private final long frameBytes;
     private final ImageView view;
+    private final Text hud;
     private final StackPane root;
+    private final FrameStats stats;
+    private final Map<String, AnimationTimer> timers;
 
     private AnimationTimer animation;
     private boolean isRunning;
+    private long hudTime;
 
-    private static ArrayList<BufferedImage> loadFrames(String filename) throws IOException {
-        ArrayList<BufferedImage> list = new ArrayList<>();
+    private static byte[] readResource(String filename) throws IOException {
         try (var input = Animator.class.getResourceAsStream(filename)) {
             if (input == null) {
                 throw new IOException("Error loading image");
             }
-            try (var stream = ImageIO.createImageInputStream(input)) {
-                ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
-                reader.setInput(stream);
-                int count = reader.getNumImages(true);
-                if (count == 0) {
-                    throw new IllegalArgumentException("Error reading GIF image");
-                }
-                for (int i = 0; i < count; i++) {
-                    list.add(reader.read(i));
-                }
-            }
+            return input.readAllBytes();
+        }
+    }
+
+    private static ArrayList<BufferedImage> readFrames(FrameFile file) throws IOException {
+        ArrayList<BufferedImage> list = new ArrayList<>();
+        for (int i = 0; i < file.getFrameCount(); i++) {
+            list.add(file.readImage(i));
         }
         return list;
     }
 
+    private static int[] readDelays(FrameFile file) {
+        int[] delays = new int[file.getFrameCount()];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = file.getDelay(i);
+        }
+        return delays;
+    }
+
     public Animator() throws IOException {
-        frames = loadFrames(IMAGE);
-        BufferedImage first = frames.get(0);
-        width = first.getWidth();
-        height = first.getHeight();
+        if (MAPPED != null) {
+            frames = null;
+            delays = null;
+            cache = null;
+            stream = null;
+            mapped = new MappedFrames(Path.of(MAPPED));
+            gif = null;
+            width = mapped.getWidth();
+            height = mapped.getHeight();
+        } else if (STREAMING) {
+            frames = null;
+            delays = null;
+            cache = null;
+            stream = new FrameStream(IMAGE, RING_SIZE);
+            mapped = null;
+            gif = null;
+            width = stream.getWidth();
+            height = stream.getHeight();
+        } else if (DIRECT) {
+            frames = null;
+            delays = null;
+            cache = null;
+            stream = null;
+            mapped = null;
+            gif = new GifDecoder(readResource(IMAGE));
+            width = gif.getWidth();
+            height = gif.getHeight();
+        } else {
+            var file = FrameFile.load(Animator.class, IMAGE);
+            if (file != null) {
+                try (file) {
+                    frames = readFrames(file);
+                    delays = readDelays(file);
+                }
+            } else {
+                byte[] data = readResource(IMAGE);
+                frames = new ArrayList<>(FrameDecoder.decode(data));
+                delays = FrameDecoder.getDelays(data);
+            }
+            BufferedImage first = frames.get(0);
+            width = first.getWidth();
+            height = first.getHeight();
+            cache = new FrameCache(frames, width, height, CACHE_BUDGET);
+            stream = null;
+            mapped = null;
+            gif = null;
+        }
+        frameBytes = (long) width * height * Integer.BYTES;
         view = new ImageView();
-        root = new StackPane(view);
+        hud = new Text();
+        hud.setFont(Font.font("Monospaced", 12));
+        hud.setFill(Color.WHITE);
+        hud.setStroke(Color.BLACK);
+        hud.setStrokeWidth(0.5);
+        hud.setVisible(false);
+        StackPane.setAlignment(hud, Pos.TOP_LEFT);
+        StackPane.setMargin(hud, new Insets(8));
+        root = new StackPane(view, hud);
+        stats = new FrameStats();
+        stats.register();
+        timers = new LinkedHashMap<>();
+    }
+
+    private static long bytes(Rectangle2D dirty) {
+        return (long) dirty.getWidth() * (long) dirty.getHeight() * Integer.BYTES;
+    }
+
+    /**
+     * Gets one of the animation timers created by {@link #init}, so that it
+     * can be driven without a stage.
+     *
+     * @param variant the name of the timer, such as {@code animationNewInt}
+     * @return the animation timer, or {@code null} if there is none of that
+     * name or its frames were not loaded in the selected mode
+     */
+    AnimationTimer getTimer(String variant) {
+        return timers.get(variant);
+    }
+
+    /**
+     * Gets the statistics of the animation timers.
+     *
+     * @return the frame statistics
+     */
+    FrameStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Gets the view that shows the frames.
+     *
+     * @return the image view
+     */
+    ImageView getView() {
+        return view;
+    }
+
+    private void updateHud(long now) {
+        if (hud.isVisible() && now - hudTime >= HUD_INTERVAL) {
+            hud.setText(stats.summary());
+            hudTime = now;
+        }
     }
 
     private void toggleTimers() {
@@ -113,6 +235,10 @@ public class Animator extends Application {
         if (code == KeyCode.SPACE) {
             event.consume();
             toggleTimers();
+        } else if (code == KeyCode.H) {
+            event.consume();
+            hud.setVisible(!hud.isVisible());
+            hud.setText(stats.summary());
         } else if (code == KeyCode.Q || code == KeyCode.ESCAPE) {
             event.consume();
             Platform.exit();
@@ -127,83 +253,272 @@ public class Animator extends Application {
          */
         AnimationTimer animationOld = new AnimationTimer() {
             private final int[] array = new int[width * height];
+            private final FramePacer pacer = new FramePacer();
 
             private int index;
 
+            @Override
+            public void start() {
+                super.start();
+                pacer.reset();
+                stats.start("animationOld");
+            }
+
             @Override
             public void handle(long now) {
+                stats.pulse(now);
+                if (!pacer.isDue(now)) {
+                    updateHud(now);
+                    return;
+                }
+                long start = System.nanoTime();
                 WritableImage image = new WritableImage(width, height);
                 frames.get(index).getRGB(0, 0, width, height, array, 0, width);
+                long converted = System.nanoTime();
                 image.getPixelWriter().setPixels(0, 0, width, height,
                         PixelFormat.getIntArgbInstance(), array, 0, width);
                 view.setImage(image);
+                stats.record(start, converted, System.nanoTime(), 2 * frameBytes);
+                pacer.shown(now, delays[index]);
+                updateHud(now);
                 index = index == frames.size() - 1 ? 0 : index + 1;
             }
         };
 
         /*
-         * Tests the new conversion method using the PixelBuffer class. Note
-         * that this method should (but doesn't) use two buffers to avoid
-         * writing to an image in use by the QuantumRenderer thread.
+         * Tests the new conversion method using the PixelBuffer class with a
+         * chain of direct byte buffers, so the frame is never written to an
+         * image in use by the QuantumRenderer thread. The frames are converted
+         * once to the premultiplied format and copied from the frame cache.
          */
         AnimationTimer animationNewByte = new AnimationTimer() {
-            private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES);
-            private final PixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraPreInstance();
-            private final PixelBuffer<ByteBuffer> pixelBuffer = new PixelBuffer<>(width, height, byteBuffer, pixelFormat);
-            private final WritableImage image = new WritableImage(pixelBuffer);
-            private final int[] array = new int[width * height];
+            private final SwapChain<ByteBuffer> swapChain = SwapChain.ofBytes(width, height, BUFFER_COUNT);
+            private final DamageTracker tracker = new DamageTracker(width, height);
+            private final FramePacer pacer = new FramePacer();
 
             private int index;
 
             @Override
             public void start() {
                 super.start();
-                byteBuffer.order(ByteOrder.nativeOrder());
-                view.setImage(image);
+                pacer.reset();
+                stats.start("animationNewByte");
             }
 
             @Override
             public void handle(long now) {
-                frames.get(index).getRGB(0, 0, width, height, array, 0, width);
-                byteBuffer.asIntBuffer().put(array);
-                pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
+                stats.pulse(now);
+                if (!pacer.isDue(now)) {
+                    updateHud(now);
+                    return;
+                }
+                long start = System.nanoTime();
+                Rectangle2D dirty = tracker.update(cache.get(index), swapChain.getBuffer().asIntBuffer());
+                long converted = System.nanoTime();
+                view.setImage(swapChain.swap(dirty));
+                stats.record(start, converted, System.nanoTime(), bytes(dirty));
+                pacer.shown(now, delays[index]);
+                updateHud(now);
                 index = index == frames.size() - 1 ? 0 : index + 1;
             }
         };
 
         /*
-         * Tests the new conversion method using the PixelBuffer class. Note
-         * that this method should (but doesn't) use two buffers to avoid
-         * writing to an image in use by the QuantumRenderer thread.
+         * Tests the new conversion method using the PixelBuffer class with a
+         * chain of integer buffers, so the frame is never written to an image
+         * in use by the QuantumRenderer thread. The frames are converted once
+         * to the premultiplied format and copied from the frame cache.
          */
         AnimationTimer animationNewInt = new AnimationTimer() {
-            private final IntBuffer intBuffer = IntBuffer.allocate(width * height);
-            private final PixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbPreInstance();
-            private final PixelBuffer<IntBuffer> pixelBuffer = new PixelBuffer<>(width, height, intBuffer, pixelFormat);
-            private final WritableImage image = new WritableImage(pixelBuffer);
+            private final SwapChain<IntBuffer> swapChain = SwapChain.ofInts(width, height, BUFFER_COUNT);
+            private final DamageTracker tracker = new DamageTracker(width, height);
+            private final FramePacer pacer = new FramePacer();
 
             private int index;
 
             @Override
             public void start() {
                 super.start();
-                view.setImage(image);
+                pacer.reset();
+                stats.start("animationNewInt");
             }
 
             @Override
             public void handle(long now) {
-                frames.get(index).getRGB(0, 0, width, height, intBuffer.array(), 0, width);
-                pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
+                stats.pulse(now);
+                if (!pacer.isDue(now)) {
+                    updateHud(now);
+                    return;
+                }
+                long start = System.nanoTime();
+                Rectangle2D dirty = tracker.update(cache.get(index), swapChain.getBuffer());
+                long converted = System.nanoTime();
+                view.setImage(swapChain.swap(dirty));
+                stats.record(start, converted, System.nanoTime(), bytes(dirty));
+                pacer.shown(now, delays[index]);
+                updateHud(now);
                 index = index == frames.size() - 1 ? 0 : index + 1;
             }
         };
 
         /*
-         * Selects one of the AnimationTimer instances above.
+         * Tests the new conversion method using the PixelBuffer class with
+         * frames decoded in the background into a bounded ring. Each pulse
+         * shows the next frame if it is ready and otherwise keeps the current
+         * one on screen.
+         */
+        AnimationTimer animationStream = new AnimationTimer() {
+            private final SwapChain<IntBuffer> swapChain = SwapChain.ofInts(width, height, BUFFER_COUNT);
+            private final DamageTracker tracker = new DamageTracker(width, height);
+            private final FramePacer pacer = new FramePacer();
+
+            @Override
+            public void start() {
+                super.start();
+                pacer.reset();
+                stats.start("animationStream");
+            }
+
+            @Override
+            public void handle(long now) {
+                stats.pulse(now);
+                int[] pixels = pacer.isDue(now) ? stream.poll() : null;
+                if (pixels != null) {
+                    long start = System.nanoTime();
+                    Rectangle2D dirty = tracker.update(pixels, swapChain.getBuffer());
+                    stream.recycle(pixels);
+                    long converted = System.nanoTime();
+                    view.setImage(swapChain.swap(dirty));
+                    stats.record(start, converted, System.nanoTime(), bytes(dirty));
+                    pacer.shown(now, stream.getDelay());
+                }
+                updateHud(now);
+            }
+        };
+
+        /*
+         * Tests the new conversion method using the PixelBuffer class with
+         * pre-rendered frames memory-mapped from a file. Each frame is shown
+         * through a pixel buffer that wraps its slice of the mapping, so the
+         * pixels are never decoded or copied.
+         */
+        AnimationTimer animationMapped = new AnimationTimer() {
+            private final FramePacer pacer = new FramePacer();
+
+            private int index;
+
+            @Override
+            public void start() {
+                super.start();
+                pacer.reset();
+                stats.start("animationMapped");
+            }
+
+            @Override
+            public void handle(long now) {
+                stats.pulse(now);
+                if (!pacer.isDue(now)) {
+                    updateHud(now);
+                    return;
+                }
+                try {
+                    long start = System.nanoTime();
+                    WritableImage image = mapped.getImage(index);
+                    long converted = System.nanoTime();
+                    view.setImage(image);
+                    stats.record(start, converted, System.nanoTime());
+                    pacer.shown(now, mapped.getDelay(index));
+                } catch (IOException e) {
+                    System.err.println(e);
+                    stop();
+                }
+                updateHud(now);
+                index = index == mapped.getFrameCount() - 1 ? 0 : index + 1;
+            }
+        };
+
+        /*
+         * Tests the new conversion method using the PixelBuffer class with
+         * frames decoded from the GIF file directly into a single pixel
+         * buffer. Each frame is decoded within the call to updateBuffer, when
+         * the buffer is safe to modify, and only its rectangle is updated.
+         */
+        AnimationTimer animationDirect = new AnimationTimer() {
+            private final PixelBuffer<IntBuffer> pixelBuffer = new PixelBuffer<>(width, height,
+                    IntBuffer.allocate(width * height), PixelFormat.getIntArgbPreInstance());
+            private final WritableImage image = new WritableImage(pixelBuffer);
+            private final FramePacer pacer = new FramePacer();
+
+            private long converted;
+            private Rectangle2D dirty;
+
+            @Override
+            public void start() {
+                super.start();
+                pacer.reset();
+                stats.start("animationDirect");
+            }
+
+            @Override
+            public void handle(long now) {
+                stats.pulse(now);
+                if (!pacer.isDue(now)) {
+                    updateHud(now);
+                    return;
+                }
+                long start = System.nanoTime();
+                int index = gif.getIndex();
+                pixelBuffer.updateBuffer((b) -> {
+                    dirty = gif.next(b.getBuffer());
+                    converted = System.nanoTime();
+                    return dirty;
+                });
+                view.setImage(image);
+                stats.record(start, converted, System.nanoTime(), bytes(dirty));
+                pacer.shown(now, gif.getDelay(index));
+                updateHud(now);
+            }
+        };
+
+        /*
+         * Registers only the timers whose frames were loaded for the selected
+         * mode, since the others would fail on their first frame.
+         */
+        if (cache != null) {
+            timers.put("animationOld", animationOld);
+            timers.put("animationNewByte", animationNewByte);
+            timers.put("animationNewInt", animationNewInt);
+        }
+        if (stream != null) {
+            timers.put("animationStream", animationStream);
+        }
+        if (mapped != null) {
+            timers.put("animationMapped", animationMapped);
+        }
+        if (gif != null) {
+            timers.put("animationDirect", animationDirect);
+        }
+
+        /*
+         * Selects one of the AnimationTimer instances above. The streaming
+         * mode is selected with -Danimator.streaming=true, the memory-mapped
+         * mode with -Danimator.mapped=FILE, and the direct decoding mode with
+         * -Danimator.direct=true. When more than one is given, the
+         * memory-mapped mode takes precedence over the streaming mode, and
+         * the streaming mode over the direct mode, as in the constructor.
          */
 //        animation = animationOld;
 //        animation = animationNewByte;
         animation = animationNewInt;
+        if (DIRECT) {
+            animation = animationDirect;
+        }
+        if (STREAMING) {
+            animation = animationStream;
+        }
+        if (MAPPED != null) {
+            animation = animationMapped;
+        }
     }
 
     @Override
@@ -218,9 +533,15 @@ public class Animator extends Application {
     }
 
     @Override
-    public void stop() {
+    public void stop() throws IOException {
         animation.stop();
         isRunning = false;
+        if (stream != null) {
+            stream.close();
+        }
+        if (mapped != null) {
+            mapped.close();
+        }
     }
 
     public static void main(String[] args) {
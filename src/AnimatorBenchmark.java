@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.image.WritableImage;
+
+/**
+ * A headless benchmark of the {@link Animator} pipeline, which runs the
+ * animation timers as fast as possible with no window and no pulse. Run with
+ * a command like the following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java \
+ *     --add-modules=javafx.graphics \
+ *     --module-path=$HOME/lib/javafx-sdk-15/lib \
+ *     -cp dist/pixel-buffer.jar AnimatorBenchmark \
+ *     [animationOld] [animationNewByte] [animationNewInt]
+ * }</pre>
+ * On a Linux server with no display, add the Monocle platform to the class
+ * path and select its headless mode and the software pipeline with
+ * {@code -Dglass.platform=Monocle -Dmonocle.platform=Headless
+ * -Dprism.order=sw}.
+ * <p>
+ * The benchmark starts the JavaFX toolkit without a stage and calls the
+ * {@code handle} method of each timer on the JavaFX Application Thread in a
+ * tight loop, with pulse timestamps one second apart so that every call shows
+ * a frame. Each frame is decoded, converted, and published with
+ * {@code setPixels} or {@code updateBuffer} exactly as on screen. With no
+ * scene to render, the frames are never uploaded to a texture unless the
+ * system property {@code benchmark.render} is {@code true}, in which case the
+ * view is also rendered into an image after each frame with
+ * {@code snapshot}, adding the upload of the frame and a read back of the
+ * rendered pixels. For each timer, the benchmark reports the frames per
+ * second, the mean times to convert and to publish a frame, and the bytes of
+ * pixels copied per frame as counted by the timer. The warmup and measurement
+ * times default to one and two seconds and can be set in milliseconds with
+ * the system properties {@code benchmark.warmup} and {@code benchmark.time}.
+ * A timer is available only in the mode of the {@link Animator} that loads
+ * its frames, so run {@code animationStream}, {@code animationMapped}, and
+ * {@code animationDirect} with the same system properties that select them
+ * in the application. The benchmark skips the timers that are not available.
+ */
+public class AnimatorBenchmark {
+
+    private static final long WARMUP = Long.getLong("benchmark.warmup", 1000);
+    private static final long TIME = Long.getLong("benchmark.time", 2000);
+    private static final boolean RENDER = Boolean.getBoolean("benchmark.render");
+    private static final long SECOND = 1_000_000_000L;
+
+    private static long now;
+    private static WritableImage snapshot;
+
+    private static void loop(Animator animator, AnimationTimer timer, long millis) {
+        long end = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < end) {
+            now += SECOND;
+            timer.handle(now);
+            if (RENDER) {
+                snapshot = animator.getView().snapshot(null, snapshot);
+            }
+        }
+    }
+
+    private static String run(Animator animator, String variant) {
+        AnimationTimer timer = animator.getTimer(variant);
+        if (timer == null) {
+            return String.format("%-18s %10s", variant, "(not available)");
+        }
+        FrameStats stats = animator.getStats();
+        timer.start();
+        try {
+            loop(animator, timer, WARMUP);
+            stats.reset();
+            long start = System.nanoTime();
+            loop(animator, timer, TIME);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long frames = stats.getFrameCount();
+            return String.format("%-18s %10.1f %12.1f %12.1f %14d",
+                    variant, frames / seconds, stats.getConvertTimeMean(), stats.getUpdateTimeMean(),
+                    frames == 0 ? 0 : stats.getBytesCopied() / frames);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static <T> T call(Callable<T> task) throws IOException {
+        var result = new CompletableFuture<T>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> variants = args.length > 0 ? Arrays.asList(args)
+                : Arrays.asList("animationOld", "animationNewByte", "animationNewInt");
+        Platform.startup(() -> {
+        });
+        try {
+            Animator animator = call(() -> {
+                var app = new Animator();
+                app.init();
+                return app;
+            });
+            System.out.println(String.format("%-18s %10s %12s %12s %14s",
+                    "Variant", "Frames/s", "Convert us", "Update us", "Bytes/frame"));
+            for (String variant : variants) {
+                System.out.println(call(() -> run(animator, variant)));
+            }
+        } finally {
+            Platform.exit();
+        }
+    }
+}
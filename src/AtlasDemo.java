@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.TilePane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+/**
+ * A JavaFX application to test a {@link SpriteAtlas} with many small
+ * animated icons. Run with a command like the following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java \
+ *     --add-modules=javafx.graphics \
+ *     --module-path=$HOME/lib/javafx-sdk-15/lib \
+ *     -Datlas.icons=1000 -Datlas.sprites=1000 \
+ *     -cp dist/pixel-buffer.jar AtlasDemo
+ * }</pre>
+ * The system property {@code atlas.icons} sets the number of icons, and
+ * {@code atlas.sprites} the number of sprites they share, at least one of
+ * each, with each sprite starting at a different frame of the animation.
+ * Press H to print the frame statistics and Q to quit.
+ */
+public class AtlasDemo extends Application {
+
+    private static final String TITLE = "AtlasDemo";
+    private static final String IMAGE = "duke-waving.gif";
+    private static final int ICONS = Math.max(1, Integer.getInteger("atlas.icons", 100));
+    private static final int SPRITES = Math.max(1, Math.min(Integer.getInteger("atlas.sprites", ICONS), ICONS));
+    private static final int ICON_WIDTH = 32;
+    private static final int ICON_HEIGHT = 40;
+    private static final int MAX_SIZE = 4096;
+    private static final Color BACKGROUND = Color.grayRgb(224);
+
+    private final SpriteAtlas atlas;
+    private final TilePane root;
+    private final FrameStats stats;
+
+    private AnimationTimer animation;
+
+    public AtlasDemo() throws IOException {
+        GifDecoder decoder;
+        try (var input = AtlasDemo.class.getResourceAsStream(IMAGE)) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            decoder = new GifDecoder(input.readAllBytes());
+        }
+        var frames = SpriteAtlas.Animation.of(decoder, ICON_WIDTH, ICON_HEIGHT);
+        int columns = Math.max(1, Math.min(SPRITES, MAX_SIZE / ICON_WIDTH));
+        int rows = Math.max(1, (SPRITES + columns - 1) / columns);
+        atlas = new SpriteAtlas(columns * ICON_WIDTH, rows * ICON_HEIGHT);
+        List<SpriteAtlas.Sprite> sprites = new ArrayList<>();
+        for (int i = 0; i < SPRITES; i++) {
+            sprites.add(atlas.add(frames, i));
+        }
+        List<ImageView> views = new ArrayList<>();
+        for (int i = 0; i < ICONS; i++) {
+            views.add(sprites.get(i % SPRITES).createView());
+        }
+        root = new TilePane();
+        root.getChildren().addAll(views);
+        stats = new FrameStats();
+        stats.register();
+    }
+
+    private void onKeyPressed(KeyEvent event) {
+        KeyCode code = event.getCode();
+        if (code == KeyCode.H) {
+            event.consume();
+            System.out.println(stats.summary());
+        } else if (code == KeyCode.Q || code == KeyCode.ESCAPE) {
+            event.consume();
+            Platform.exit();
+        }
+    }
+
+    @Override
+    public void init() {
+
+        /*
+         * Updates all of the sprites that are due with one call to
+         * updateBuffer. The copy into the atlas happens within the call, so
+         * the conversion time is recorded as zero.
+         */
+        animation = new AnimationTimer() {
+            @Override
+            public void start() {
+                super.start();
+                atlas.reset();
+                stats.start(String.format("atlas %d icons %d sprites", ICONS, SPRITES));
+            }
+
+            @Override
+            public void handle(long now) {
+                stats.pulse(now);
+                long start = System.nanoTime();
+                if (atlas.update(now) > 0) {
+                    stats.record(start, start, System.nanoTime());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void start(Stage stage) {
+        Scene scene = new Scene(root, 800, 600, BACKGROUND);
+        scene.addEventHandler(KeyEvent.KEY_PRESSED, this::onKeyPressed);
+        stage.setTitle(TITLE);
+        stage.setScene(scene);
+        stage.show();
+        animation.start();
+    }
+
+    @Override
+    public void stop() {
+        animation.stop();
+        System.out.println(stats.summary());
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
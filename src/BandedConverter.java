@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts an image into the buffer of a {@code PixelBuffer} in bands of rows
+ * on the common fork-join pool. Each band is written straight into its own
+ * slice of the buffer by {@link Premultiplier}, so the bands need no
+ * synchronization. Images smaller than {@link #PARALLEL_PIXELS} are converted
+ * serially on the calling thread, where the cost of forking would exceed the
+ * work saved.
+ */
+public final class BandedConverter {
+
+    /**
+     * The minimum number of pixels in an image for a parallel conversion.
+     */
+    public static final int PARALLEL_PIXELS = 512 * 512;
+
+    /**
+     * The number of pixels below which a band is not split any further.
+     */
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    private static class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient BufferedImage image;
+        private final transient IntBuffer dst;
+        private final int minY;
+        private final int maxY;
+
+        Band(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+            this.image = image;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.dst = dst;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = maxY - minY;
+            if (rows < 2 || (long) rows * image.getWidth() <= BAND_PIXELS) {
+                Premultiplier.convert(image, minY, maxY, dst);
+            } else {
+                int midY = minY + rows / 2;
+                invokeAll(new Band(image, minY, midY, dst), new Band(image, midY, maxY, dst));
+            }
+        }
+    }
+
+    private BandedConverter() {
+    }
+
+    /**
+     * Converts an image into a buffer of premultiplied pixels, in parallel
+     * when the image is large enough to benefit.
+     *
+     * @param image the source image
+     * @param dst the target buffer in the INT_ARGB_PRE format, with room for
+     * all of the pixels in the image
+     */
+    public static void convert(BufferedImage image, IntBuffer dst) {
+        int height = image.getHeight();
+        if ((long) image.getWidth() * height < PARALLEL_PIXELS
+                || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            Premultiplier.convert(image, 0, height, dst);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Band(image, 0, height, dst));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongBiFunction;
+import javafx.geometry.Rectangle2D;
+import javax.imageio.ImageIO;
+
+/**
+ * A headless benchmark of the conversion step of every {@link Tester} method,
+ * for each of the bundled images and for the PNG image scaled up to Full HD
+ * and 4K UHD. Run with a command like the following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java -Djava.awt.headless=true \
+ *     -cp dist/pixel-buffer.jar:$HOME/lib/javafx-sdk-15/lib/javafx.graphics.jar \
+ *     ConversionBenchmark [PNG] [JPEG] [GIF] [FHD] [UHD]
+ * }</pre>
+ * For each method and image, the benchmark reports the frames converted per
+ * second, the rate of allocation on the benchmark thread, and the bytes
+ * copied per frame. A full-frame copy is counted for each intermediate array
+ * or image that a method fills and for the final write into the JavaFX image
+ * or pixel buffer. Damage tracking is turned off, since the source never
+ * changes and the tracked methods would otherwise copy nothing after the
+ * first frame, so every method writes the whole frame. The warmup and
+ * measurement times default to one and two seconds and can be set in
+ * milliseconds with the system properties {@code benchmark.warmup} and
+ * {@code benchmark.time}.
+ */
+public class ConversionBenchmark {
+
+    private static final long WARMUP = Long.getLong("benchmark.warmup", 1000);
+    private static final long TIME = Long.getLong("benchmark.time", 2000);
+    private static final String PNG = "PNG_transparency_demonstration_1.png";
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static class Case {
+
+        private final String name;
+        private final ToLongBiFunction<Conversions, Long> method;
+
+        Case(String name, ToLongBiFunction<Conversions, Long> method) {
+            this.name = name;
+            this.method = method;
+        }
+    }
+
+    private static final List<Case> CASES = Arrays.asList(
+            new Case("01 drawArgbSetArgb", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_ARGB), f)),
+            new Case("02 drawArgbSetArgbPre", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_ARGB), f)),
+            new Case("03 drawArgbPreSetArgb", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_ARGB_PRE), f)),
+            new Case("04 drawArgbPreSetArgbPre", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_ARGB_PRE), f)),
+            new Case("05 drawRgbSetArgb", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_RGB), f)),
+            new Case("06 drawBgrSetArgb", (c, f) -> draw(c.drawInt(BufferedImage.TYPE_INT_BGR), f)),
+            new Case("07 drawAbgrSetBgra", (c, f) -> draw(c.drawByte(BufferedImage.TYPE_4BYTE_ABGR), f)),
+            new Case("08 drawAbgrPreSetBgraPre", (c, f) -> draw(c.drawByte(BufferedImage.TYPE_4BYTE_ABGR_PRE), f)),
+            new Case("09 copyArgbSetArgb", (c, f) -> draw(c.copyInt(), f)),
+            new Case("10 copyArgbSetArgbPre", (c, f) -> draw(c.copyInt(), f)),
+            new Case("11 drawArgbPrePutBytes", (c, f) -> f + area(c.drawPutBytes())),
+            new Case("12 copyArgbPutBytes", (c, f) -> f + area(c.copyPutBytes())),
+            new Case("13 drawArgbPrePutInts", (c, f) -> area(c.drawPutInts())),
+            new Case("14 copyArgbPutInts", (c, f) -> f + area(c.copyPutInts())),
+            new Case("15 convertAbgrPutBytes", (c, f) -> area(c.convertPutBytes())),
+            new Case("16 convertAbgrPutInts", (c, f) -> area(c.convertPutInts())),
+            new Case("17 convertRgbPutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_INT_RGB))),
+            new Case("18 convertRgbPutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_INT_RGB))),
+            new Case("19 convertBgrPutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_INT_BGR))),
+            new Case("20 convertBgrPutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_INT_BGR))),
+            new Case("21 convert3BgrPutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_3BYTE_BGR))),
+            new Case("22 convert3BgrPutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_3BYTE_BGR))),
+            new Case("23 convertAbgrPrePutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_4BYTE_ABGR_PRE))),
+            new Case("24 convertAbgrPrePutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_4BYTE_ABGR_PRE))),
+            new Case("25 convertArgbPutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_INT_ARGB))),
+            new Case("26 convertArgbPutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_INT_ARGB))),
+            new Case("27 convertArgbPrePutBytes", (c, f) -> area(c.convertPutBytes(BufferedImage.TYPE_INT_ARGB_PRE))),
+            new Case("28 convertArgbPrePutInts", (c, f) -> area(c.convertPutInts(BufferedImage.TYPE_INT_ARGB_PRE)))
+    );
+
+    private static volatile Object sink;
+
+    private static long draw(Object result, long frameBytes) {
+        sink = result;
+        return 2 * frameBytes;
+    }
+
+    private static long area(Rectangle2D region) {
+        sink = region;
+        return (long) region.getWidth() * (long) region.getHeight() * Integer.BYTES;
+    }
+
+    private static BufferedImage loadImage(String filename) throws IOException {
+        try (var input = ConversionBenchmark.class.getResourceAsStream(filename)) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            return ImageIO.read(input);
+        }
+    }
+
+    private static BufferedImage scaleImage(BufferedImage source, int width, int height) {
+        var image = new BufferedImage(width, height, source.getType());
+        var graphics = image.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        return image;
+    }
+
+    private static BufferedImage getImage(String name) throws IOException {
+        switch (name) {
+            case "PNG":
+                return loadImage(PNG);
+            case "JPEG":
+                return loadImage("Renoir_by_Bazille.jpg");
+            case "GIF":
+                return loadImage("duke-waving.gif");
+            case "FHD":
+                return scaleImage(loadImage(PNG), 1920, 1080);
+            case "UHD":
+                return scaleImage(loadImage(PNG), 3840, 2160);
+            default:
+                throw new IllegalArgumentException("Unknown image: " + name);
+        }
+    }
+
+    private static void run(Case test, String name, Conversions conversions, long frameBytes) {
+        long threadId = Thread.currentThread().getId();
+        long end = System.nanoTime() + WARMUP * 1_000_000;
+        while (System.nanoTime() < end) {
+            test.method.applyAsLong(conversions, frameBytes);
+        }
+        long count = 0;
+        long copied = 0;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        end = start + TIME * 1_000_000;
+        long now = start;
+        while (now < end) {
+            copied += test.method.applyAsLong(conversions, frameBytes);
+            count++;
+            now = System.nanoTime();
+        }
+        allocated = THREADS.getThreadAllocatedBytes(threadId) - allocated;
+        double seconds = Math.max(now - start, 1) / 1e9;
+        System.out.println(String.format("%-26s %-5s %10.1f %12.1f %14d",
+                test.name, name, count / seconds, allocated / seconds / MEGABYTE, count == 0 ? 0 : copied / count));
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> images = args.length > 0 ? Arrays.asList(args) : Arrays.asList("PNG", "JPEG", "GIF", "FHD", "UHD");
+        System.out.println(String.format("%-26s %-5s %10s %12s %14s",
+                "Method", "Image", "Frames/s", "Alloc MB/s", "Bytes/frame"));
+        for (String name : images) {
+            BufferedImage source = getImage(name);
+            int width = source.getWidth();
+            int height = source.getHeight();
+            long frameBytes = (long) width * height * Integer.BYTES;
+            var intBuffer = IntBuffer.allocate(width * height);
+            var byteBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES);
+            var conversions = new Conversions(source, intBuffer, byteBuffer);
+            conversions.setDamageTracking(false);
+            for (Case test : CASES) {
+                run(test, name, conversions, frameBytes);
+            }
+        }
+    }
+}
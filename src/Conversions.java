@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * The conversion steps of the {@link Tester} methods, separated from the
+ * JavaFX stage so that they can run headless. Each method converts the source
+ * image into either an array for {@code PixelWriter.setPixels} or the buffer
+ * of a {@code PixelBuffer}, leaving only the call to {@code setPixels} or
+ * {@code updateBuffer} for the JavaFX Application Thread. The intermediate
+ * images are taken from a {@link PixelPool}, so repeating a conversion
+ * allocates no new pixels.
+ */
+public class Conversions {
+
+    private final BufferedImage source;
+    private final int width;
+    private final int height;
+    private final int[] rgbArray;
+    private final IntBuffer intBuffer;
+    private final IntBuffer byteInts;
+    private final BufferedImage sharedImage;
+    private final DamageTracker tracker;
+    private final PixelPool pool;
+    private final Rectangle2D full;
+    private final Map<Integer, BufferedImage> sources;
+
+    private boolean tracking = true;
+
+    /**
+     * Creates the conversion steps for the source image.
+     *
+     * @param source the source image
+     * @param intBuffer the heap buffer of a {@code PixelBuffer} in the
+     * INT_ARGB_PRE format
+     * @param byteBuffer the direct buffer of a {@code PixelBuffer} in the
+     * BYTE_BGRA_PRE format
+     */
+    public Conversions(BufferedImage source, IntBuffer intBuffer, ByteBuffer byteBuffer) {
+        this.source = source;
+        this.intBuffer = intBuffer;
+        byteInts = byteBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        width = source.getWidth();
+        height = source.getHeight();
+        rgbArray = new int[width * height];
+        sharedImage = SharedImage.createBufferedImage(intBuffer, width, height);
+        tracker = new DamageTracker(width, height);
+        pool = new PixelPool();
+        full = new Rectangle2D(0, 0, width, height);
+        sources = new HashMap<>();
+    }
+
+    /**
+     * Sets whether the methods that copy an array into a buffer copy only the
+     * region that differs from the buffer. Tracking is on by default. With
+     * tracking off, those methods copy the whole frame, as a benchmark needs
+     * when it converts the same source over and over.
+     *
+     * @param tracking {@code true} to copy only the changed region;
+     * {@code false} to copy the whole frame
+     */
+    public void setDamageTracking(boolean tracking) {
+        this.tracking = tracking;
+    }
+
+    private Rectangle2D put(int[] data, IntBuffer buffer) {
+        if (tracking) {
+            return tracker.update(data, buffer);
+        }
+        buffer.duplicate().clear().put(data, 0, width * height);
+        return full;
+    }
+
+    private BufferedImage draw(int type) {
+        var awtImage = pool.getBufferedImage(width, height, type);
+        Graphics2D graphics = awtImage.createGraphics();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.SrcOver);
+        graphics.drawImage(source, 0, 0, null);
+        graphics.dispose();
+        pool.release(awtImage);
+        return awtImage;
+    }
+
+    /**
+     * Draws the source into a cleared image of an integer type.
+     *
+     * @param type the type of the image
+     * @return the pixels of the image, valid until the next call to draw an
+     * image of the same type
+     */
+    public int[] drawInt(int type) {
+        return ((DataBufferInt) draw(type).getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Draws the source into a cleared image of a byte type.
+     *
+     * @param type the type of the image
+     * @return the pixels of the image, valid until the next call to draw an
+     * image of the same type
+     */
+    public byte[] drawByte(int type) {
+        return ((DataBufferByte) draw(type).getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Copies the source into an array in the default RGB color model.
+     *
+     * @return the array of pixels in the INT_ARGB format
+     */
+    public int[] copyInt() {
+        source.getRGB(0, 0, width, height, rgbArray, 0, width);
+        return rgbArray;
+    }
+
+    /**
+     * Draws the source directly into the integer buffer.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D drawPutInts() {
+        Graphics2D graphics = sharedImage.createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
+        graphics.drawImage(source, 0, 0, null);
+        graphics.dispose();
+        return full;
+    }
+
+    /**
+     * Draws the source into a TYPE_INT_ARGB_PRE image and copies it into
+     * the byte buffer.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D drawPutBytes() {
+        int[] data = drawInt(BufferedImage.TYPE_INT_ARGB_PRE);
+        return put(data, byteInts);
+    }
+
+    /**
+     * Copies the source in the default RGB color model into the integer
+     * buffer, without premultiplying.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D copyPutInts() {
+        return put(copyInt(), intBuffer);
+    }
+
+    /**
+     * Copies the source in the default RGB color model into the byte buffer,
+     * without premultiplying.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D copyPutBytes() {
+        return put(copyInt(), byteInts);
+    }
+
+    /**
+     * Premultiplies the source directly into the integer buffer.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D convertPutInts() {
+        BandedConverter.convert(source, intBuffer);
+        return full;
+    }
+
+    /**
+     * Premultiplies the source directly into the byte buffer.
+     *
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D convertPutBytes() {
+        BandedConverter.convert(source, byteInts);
+        return full;
+    }
+
+    /**
+     * Gets a copy of the source drawn over transparent black into an image of
+     * another type, created on first use.
+     *
+     * @param type the type of the image
+     * @return the copy of the source in an image of the type
+     */
+    public BufferedImage getSource(int type) {
+        return sources.computeIfAbsent(type, t -> {
+            var image = new BufferedImage(width, height, t);
+            Graphics2D graphics = image.createGraphics();
+            graphics.drawImage(source, 0, 0, null);
+            graphics.dispose();
+            return image;
+        });
+    }
+
+    /**
+     * Converts the copy of the source in an image of a type directly into the
+     * integer buffer with the kernel for the type.
+     *
+     * @param type the type of the image
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D convertPutInts(int type) {
+        BandedConverter.convert(getSource(type), intBuffer);
+        return full;
+    }
+
+    /**
+     * Converts the copy of the source in an image of a type directly into the
+     * byte buffer with the kernel for the type.
+     *
+     * @param type the type of the image
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D convertPutBytes(int type) {
+        BandedConverter.convert(getSource(type), byteInts);
+        return full;
+    }
+}
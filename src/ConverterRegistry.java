@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.image.PixelBuffer;
+
+/**
+ * A registry of the kernels that convert an AWT image into the buffer of a
+ * {@code PixelBuffer}, with one kernel for each type of image. Each kernel
+ * reads the data buffer of the raster directly and swizzles the components,
+ * fills in an opaque alpha, and premultiplies the colors in a single pass
+ * over each row, writing straight into the target buffer. Images of a type
+ * with no kernel are read with {@code BufferedImage.getRGB}.
+ * <p>
+ * The kernels write pixels in the INT_ARGB_PRE format. They serve the
+ * BYTE_BGRA_PRE format as well through a view of its buffer as integers in
+ * little-endian byte order, where each pixel is the same 32-bit value, so
+ * {@link #getTarget} is the only part of the conversion that depends on the
+ * format of the pixel buffer.
+ */
+public final class ConverterRegistry {
+
+    /**
+     * Converts a band of rows of an image into the same rows of a buffer of
+     * premultiplied pixels.
+     */
+    @FunctionalInterface
+    public interface Kernel {
+
+        /**
+         * Converts the rows from {@code minY} to {@code maxY} of an image.
+         *
+         * @param image the source image
+         * @param minY the first row of the band
+         * @param maxY the row after the last row of the band
+         * @param dst the target buffer in the INT_ARGB_PRE format, with room
+         * for all of the pixels in the image
+         */
+        void convert(BufferedImage image, int minY, int maxY, IntBuffer dst);
+    }
+
+    private static final Map<Integer, Kernel> KERNELS = new ConcurrentHashMap<>();
+
+    static {
+        register(BufferedImage.TYPE_INT_ARGB, ConverterRegistry::convertIntArgb);
+        register(BufferedImage.TYPE_INT_ARGB_PRE, ConverterRegistry::convertIntArgbPre);
+        register(BufferedImage.TYPE_INT_RGB, ConverterRegistry::convertIntRgb);
+        register(BufferedImage.TYPE_INT_BGR, ConverterRegistry::convertIntBgr);
+        register(BufferedImage.TYPE_3BYTE_BGR, ConverterRegistry::convert3ByteBgr);
+        register(BufferedImage.TYPE_4BYTE_ABGR, ConverterRegistry::convert4ByteAbgr);
+        register(BufferedImage.TYPE_4BYTE_ABGR_PRE, ConverterRegistry::convert4ByteAbgrPre);
+        register(BufferedImage.TYPE_BYTE_INDEXED, ConverterRegistry::convertByteIndexed);
+        register(BufferedImage.TYPE_BYTE_BINARY, ConverterRegistry::convertByteBinary);
+    }
+
+    /**
+     * The rows of the target buffer. Rows are written directly into the
+     * array of a heap buffer, or into a single row that is then copied into
+     * a direct buffer.
+     */
+    private static class Rows {
+
+        private final IntBuffer dst;
+        private final IntBuffer target;
+        private final int width;
+        private final int[] row;
+
+        Rows(IntBuffer dst, int width) {
+            this.dst = dst;
+            this.width = width;
+            target = dst.duplicate();
+            row = dst.hasArray() ? null : new int[width];
+        }
+
+        int[] array() {
+            return row == null ? dst.array() : row;
+        }
+
+        int offset(int y) {
+            return row == null ? dst.arrayOffset() + y * width : 0;
+        }
+
+        void flush(int y) {
+            if (row != null) {
+                target.position(y * width);
+                target.put(row);
+            }
+        }
+    }
+
+    private ConverterRegistry() {
+    }
+
+    /**
+     * Registers the kernel for a type of image, replacing any kernel already
+     * registered for the type.
+     *
+     * @param type the type of the image, such as TYPE_INT_RGB
+     * @param kernel the kernel to convert images of the type
+     */
+    public static void register(int type, Kernel kernel) {
+        KERNELS.put(type, kernel);
+    }
+
+    /**
+     * Gets the kernel for a type of image.
+     *
+     * @param type the type of the image
+     * @return the kernel registered for the type, or a kernel that reads the
+     * image with {@code BufferedImage.getRGB} when there is none
+     */
+    public static Kernel get(int type) {
+        return KERNELS.getOrDefault(type, ConverterRegistry::convertRgb);
+    }
+
+    /**
+     * Checks whether a type of image has its own kernel.
+     *
+     * @param type the type of the image
+     * @return {@code true} if a kernel is registered for the type; otherwise
+     * {@code false}
+     */
+    public static boolean isSupported(int type) {
+        return KERNELS.containsKey(type);
+    }
+
+    /**
+     * Gets the buffer of a pixel buffer as the target of the kernels.
+     *
+     * @param pixelBuffer a pixel buffer in the INT_ARGB_PRE or BYTE_BGRA_PRE
+     * format
+     * @return the buffer, or a view of it as integers in little-endian byte
+     * order
+     * @throws IllegalArgumentException if the pixel buffer is in neither
+     * format
+     */
+    public static IntBuffer getTarget(PixelBuffer<?> pixelBuffer) {
+        switch (pixelBuffer.getPixelFormat().getType()) {
+            case INT_ARGB_PRE:
+                return (IntBuffer) pixelBuffer.getBuffer();
+            case BYTE_BGRA_PRE:
+                return ((ByteBuffer) pixelBuffer.getBuffer()).duplicate()
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            default:
+                throw new IllegalArgumentException("Unsupported pixel format");
+        }
+    }
+
+    /**
+     * Converts an image into a pixel buffer of the same size, in parallel
+     * when the image is large enough to benefit. Call this method within
+     * {@code updateBuffer} when the pixel buffer is in use.
+     *
+     * @param image the source image
+     * @param pixelBuffer the target pixel buffer in the INT_ARGB_PRE or
+     * BYTE_BGRA_PRE format
+     */
+    public static void convert(BufferedImage image, PixelBuffer<?> pixelBuffer) {
+        BandedConverter.convert(image, getTarget(pixelBuffer));
+    }
+
+    private static int intOffset(Raster raster, int stride) {
+        return raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX();
+    }
+
+    private static int byteOffset(Raster raster, int stride, int pixelStride) {
+        return raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX() * pixelStride;
+    }
+
+    private static int intStride(Raster raster) {
+        return ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    }
+
+    private static int byteStride(Raster raster) {
+        return ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+    }
+
+    private static void convertIntArgb(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        int[] src = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = intStride(raster);
+        int offset = intOffset(raster, stride);
+        for (int y = minY; y < maxY; y++) {
+            Premultiplier.premultiply(src, offset + y * stride, dst, y * width, width);
+        }
+    }
+
+    private static void convertIntArgbPre(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        int[] src = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = intStride(raster);
+        int offset = intOffset(raster, stride);
+        IntBuffer target = dst.duplicate();
+        for (int y = minY; y < maxY; y++) {
+            target.position(y * width);
+            target.put(src, offset + y * stride, width);
+        }
+    }
+
+    private static void convertIntRgb(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        int[] src = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = intStride(raster);
+        int offset = intOffset(raster, stride);
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                out[dstPos + x] = 0xff000000 | src[srcPos + x];
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convertIntBgr(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        int[] src = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = intStride(raster);
+        int offset = intOffset(raster, stride);
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                int bgr = src[srcPos + x];
+                out[dstPos + x] = 0xff000000 | (bgr & 0xff) << 16 | bgr & 0xff00 | bgr >> 16 & 0xff;
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convert3ByteBgr(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = byteStride(raster);
+        int offset = byteOffset(raster, stride, 3);
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                int j = srcPos + x * 3;
+                out[dstPos + x] = 0xff000000 | (src[j + 2] & 0xff) << 16
+                        | (src[j + 1] & 0xff) << 8 | (src[j] & 0xff);
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convert4ByteAbgr(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = byteStride(raster);
+        int offset = byteOffset(raster, stride, Integer.BYTES);
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                int j = srcPos + x * Integer.BYTES;
+                int a = src[j] & 0xff;
+                int m = a * 0x10101;
+                int r = ((src[j + 3] & 0xff) * m + 0x800000) >>> 24;
+                int g = ((src[j + 2] & 0xff) * m + 0x800000) >>> 24;
+                int b = ((src[j + 1] & 0xff) * m + 0x800000) >>> 24;
+                out[dstPos + x] = a << 24 | r << 16 | g << 8 | b;
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convert4ByteAbgrPre(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = byteStride(raster);
+        int offset = byteOffset(raster, stride, Integer.BYTES);
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                int j = srcPos + x * Integer.BYTES;
+                out[dstPos + x] = (src[j] & 0xff) << 24 | (src[j + 3] & 0xff) << 16
+                        | (src[j + 2] & 0xff) << 8 | (src[j + 1] & 0xff);
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convertByteIndexed(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = byteStride(raster);
+        int offset = byteOffset(raster, stride, 1);
+        int[] table = Premultiplier.palette((IndexColorModel) image.getColorModel());
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int srcPos = offset + y * stride;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                out[dstPos + x] = table[src[srcPos + x] & 0xff];
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convertByteBinary(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        var model = (MultiPixelPackedSampleModel) raster.getSampleModel();
+        byte[] src = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = model.getScanlineStride();
+        int bits = model.getPixelBitStride();
+        int mask = (1 << bits) - 1;
+        int offset = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride;
+        int bitOffset = model.getDataBitOffset()
+                - raster.getSampleModelTranslateX() * bits;
+        int[] table = Premultiplier.palette((IndexColorModel) image.getColorModel());
+        var rows = new Rows(dst, width);
+        int[] out = rows.array();
+        for (int y = minY; y < maxY; y++) {
+            int bitPos = (offset + y * stride) * Byte.SIZE + bitOffset;
+            int dstPos = rows.offset(y);
+            for (int x = 0; x < width; x++) {
+                int bit = bitPos + x * bits;
+                int index = src[bit >> 3] >> (Byte.SIZE - bits - (bit & 7)) & mask;
+                out[dstPos + x] = table[index];
+            }
+            rows.flush(y);
+        }
+    }
+
+    private static void convertRgb(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = minY; y < maxY; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            Premultiplier.premultiply(row, 0, dst, y * width, width);
+        }
+    }
+}
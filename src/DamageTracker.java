@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * Copies a frame into the buffer of a {@code PixelBuffer} while detecting
+ * which of its pixels changed. The tracker compares each row of the new frame
+ * with the pixels already in the buffer, copies only the span of the row that
+ * differs, and returns the bounding rectangle of all such spans. The result
+ * can be returned directly from the callback of
+ * {@code PixelBuffer.updateBuffer} so that only the damaged region is
+ * uploaded.
+ */
+public class DamageTracker {
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates a damage tracker for frames of the given size.
+     *
+     * @param width the width of the frames in pixels
+     * @param height the height of the frames in pixels
+     */
+    public DamageTracker(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Copies the pixels of the frame that differ from those in the buffer.
+     * The position and limit of the buffer are left unchanged.
+     *
+     * @param frame the new frame, one integer per pixel
+     * @param buffer the buffer holding the previous contents
+     * @return the region of the buffer that changed, or
+     * {@link Rectangle2D#EMPTY} if the frame is identical to the buffer
+     */
+    public Rectangle2D update(int[] frame, IntBuffer buffer) {
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        IntBuffer dst = buffer.duplicate();
+        for (int y = 0; y < height; y++) {
+            int start = y * width;
+            int first = firstMismatch(frame, dst, start);
+            if (first < 0) {
+                continue;
+            }
+            int last = lastMismatch(frame, dst, start, first);
+            dst.position(start + first);
+            dst.put(frame, start + first, last - first + 1);
+            minX = Math.min(minX, first);
+            maxX = Math.max(maxX, last);
+            if (maxY < 0) {
+                minY = y;
+            }
+            maxY = y;
+        }
+        return maxY < 0 ? Rectangle2D.EMPTY
+                : new Rectangle2D(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private int firstMismatch(int[] frame, IntBuffer dst, int start) {
+        if (dst.hasArray()) {
+            int offset = dst.arrayOffset() + start;
+            return Arrays.mismatch(frame, start, start + width, dst.array(), offset, offset + width);
+        }
+        for (int x = 0; x < width; x++) {
+            if (frame[start + x] != dst.get(start + x)) {
+                return x;
+            }
+        }
+        return -1;
+    }
+
+    private int lastMismatch(int[] frame, IntBuffer dst, int start, int first) {
+        if (dst.hasArray()) {
+            int[] array = dst.array();
+            int offset = dst.arrayOffset() + start;
+            for (int x = width - 1; x > first; x--) {
+                if (frame[start + x] != array[offset + x]) {
+                    return x;
+                }
+            }
+            return first;
+        }
+        for (int x = width - 1; x > first; x--) {
+            if (frame[start + x] != dst.get(start + x)) {
+                return x;
+            }
+        }
+        return first;
+    }
+}
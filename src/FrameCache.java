@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A cache of animation frames converted to the premultiplied ARGB format of
+ * the {@code PixelBuffer}. Each pixel is one integer in the INT_ARGB_PRE
+ * format, which is also the BYTE_BGRA_PRE format when the integers are stored
+ * in little-endian byte order. The cache holds at most the number of frames
+ * that fit in its byte budget and evicts the least recently used frame when
+ * full, reusing its array for the frame that replaces it. When the budget is
+ * smaller than a single frame, every frame is converted on demand into a
+ * scratch array.
+ */
+public class FrameCache {
+
+    private final List<BufferedImage> frames;
+    private final int width;
+    private final int height;
+    private final int capacity;
+    private final LinkedHashMap<Integer, int[]> cache;
+
+    private int[] scratch;
+
+    /**
+     * Creates a frame cache with the given memory budget.
+     *
+     * @param frames the source frames of the animation
+     * @param width the width of the frames in pixels
+     * @param height the height of the frames in pixels
+     * @param budget the maximum number of bytes of converted pixels to keep
+     */
+    public FrameCache(List<BufferedImage> frames, int width, int height, long budget) {
+        this.frames = frames;
+        this.width = width;
+        this.height = height;
+        long frameBytes = (long) width * height * Integer.BYTES;
+        capacity = (int) Math.min(frames.size(), budget / frameBytes);
+        cache = new LinkedHashMap<>(capacity, 0.75f, true);
+    }
+
+    /**
+     * Gets the converted pixels of a frame, converting the frame if it is not
+     * in the cache. The array returned may be reused by a later call.
+     *
+     * @param index the index of the frame
+     * @return the pixels of the frame in the INT_ARGB_PRE format
+     */
+    public int[] get(int index) {
+        int[] pixels = cache.get(index);
+        if (pixels == null) {
+            if (capacity == 0) {
+                if (scratch == null) {
+                    scratch = new int[width * height];
+                }
+                pixels = scratch;
+            } else if (cache.size() == capacity) {
+                var eldest = cache.entrySet().iterator();
+                pixels = eldest.next().getValue();
+                eldest.remove();
+                cache.put(index, pixels);
+            } else {
+                pixels = new int[width * height];
+                cache.put(index, pixels);
+            }
+            convert(frames.get(index), pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Gets the number of frames currently in the cache.
+     *
+     * @return the number of converted frames held in memory
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private void convert(BufferedImage frame, int[] pixels) {
+        Premultiplier.convert(frame, IntBuffer.wrap(pixels));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+/**
+ * Decodes all of the frames of a GIF file in parallel on the common fork-join
+ * pool. The frames are split into one contiguous range for each worker, and
+ * each worker decodes its range with its own {@link ImageReader} over the
+ * bytes of the file, since a reader is not safe for use by more than one
+ * thread. The GIF reader returns each frame as it is stored in the file,
+ * without composing it over the previous frames, so the frames can be decoded
+ * in any order as long as the ranges are joined back in order.
+ */
+public final class FrameDecoder {
+
+    private FrameDecoder() {
+    }
+
+    private static List<BufferedImage> decode(byte[] data, int start, int end) throws IOException {
+        List<BufferedImage> list = new ArrayList<>(end - start);
+        try (var stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(stream);
+            try {
+                for (int i = start; i < end; i++) {
+                    list.add(reader.read(i));
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+        return list;
+    }
+
+    private static int count(byte[] data) throws IOException {
+        try (var stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(stream);
+            try {
+                return reader.getNumImages(true);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads the delay of each frame of a GIF file from its metadata, without
+     * decoding the frames.
+     *
+     * @param data the contents of the GIF file
+     * @return the delay of each frame in milliseconds, or zero for a frame
+     * with no delay
+     * @throws IOException if an error occurs reading the file
+     */
+    public static int[] getDelays(byte[] data) throws IOException {
+        try (var stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(stream);
+            try {
+                int[] delays = new int[reader.getNumImages(true)];
+                for (int i = 0; i < delays.length; i++) {
+                    delays[i] = FrameFile.getDelay(reader, i);
+                }
+                return delays;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes the frames of a GIF file, in parallel when there is more than
+     * one frame and more than one processor.
+     *
+     * @param data the contents of the GIF file
+     * @return the frames of the file in order
+     * @throws IOException if an error occurs reading the file
+     */
+    public static List<BufferedImage> decode(byte[] data) throws IOException {
+        int count = count(data);
+        if (count <= 0) {
+            throw new IOException("Error reading GIF image");
+        }
+        int workers = Math.min(count, ForkJoinPool.getCommonPoolParallelism());
+        if (workers < 2) {
+            return decode(data, 0, count);
+        }
+        List<Callable<List<BufferedImage>>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            int start = (int) ((long) count * i / workers);
+            int end = (int) ((long) count * (i + 1) / workers);
+            tasks.add(() -> decode(data, start, end));
+        }
+        List<BufferedImage> frames = new ArrayList<>(count);
+        try {
+            for (Future<List<BufferedImage>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                frames.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return frames;
+    }
+}
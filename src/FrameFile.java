@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * A file of frames transcoded to the BYTE_BGRA_PRE format, so that they can
+ * be loaded without decoding. All values are little-endian. The file has a
+ * 64-byte header, followed by an index of the frames, followed by the frames
+ * themselves:
+ * <pre>
+ * Header   int magic "PXBF", int version, int width, int height,
+ *          int count, int reserved, byte[32] SHA-256 hash of the source,
+ *          padding to 64 bytes
+ * Index    for each frame: long offset, int delay in milliseconds,
+ *          int reserved
+ * Frames   width * height * 4 bytes each, starting on 64-byte boundaries
+ * </pre>
+ * The hash identifies the source file from which the frames were transcoded.
+ * When the system property {@code pixelbuffer.cache.dir} names a directory,
+ * {@link #load} keeps one file there for each source, named by its hash, so
+ * that only the first start decodes the source and a changed source is
+ * decoded again.
+ */
+public class FrameFile implements AutoCloseable {
+
+    private static final int MAGIC = 0x46425850;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int ENTRY_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int ALIGNMENT = 64;
+    private static final String SUFFIX = ".pxbf";
+    private static final String CACHE_DIR = System.getProperty("pixelbuffer.cache.dir");
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int count;
+    private final byte[] hash;
+    private final long[] offsets;
+    private final int[] delays;
+
+    /**
+     * Computes the SHA-256 hash of the source of a frame file.
+     *
+     * @param data the contents of the source file
+     * @return the hash of the contents
+     */
+    public static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the delay of a frame from the metadata of an animated GIF image.
+     *
+     * @param reader the image reader
+     * @param index the index of the frame
+     * @return the delay in milliseconds, or zero if the image has none
+     * @throws IOException if an error occurs reading the metadata
+     */
+    public static int getDelay(ImageReader reader, int index) throws IOException {
+        IIOMetadata metadata = reader.getImageMetadata(index);
+        String format = "javax_imageio_gif_image_1.0";
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(format)) {
+            return 0;
+        }
+        Node root = metadata.getAsTree(format);
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals("GraphicControlExtension")) {
+                String delay = ((Element) node).getAttribute("delayTime");
+                return delay.isEmpty() ? 0 : Integer.parseInt(delay) * 10;
+            }
+        }
+        return 0;
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Error reading frame file");
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Transcodes the frames of an image into a new frame file, decoding and
+     * converting one frame at a time.
+     *
+     * @param reader the image reader, with its input already set
+     * @param hash the hash of the source file
+     * @param target the frame file
+     * @throws IOException if an error occurs reading the image or writing the
+     * file
+     */
+    public static void write(ImageReader reader, byte[] hash, Path target) throws IOException {
+        int count = reader.getNumImages(true);
+        if (count <= 0) {
+            throw new IOException("Error reading image");
+        }
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        long frameBytes = (long) width * height * Integer.BYTES;
+        var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(count).putInt(0);
+        header.put(hash).clear();
+        var index = ByteBuffer.allocate(count * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        var frame = ByteBuffer.allocate((int) frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+        try (var channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long offset = align(HEADER_BYTES + (long) count * ENTRY_BYTES);
+            for (int i = 0; i < count; i++) {
+                BufferedImage image = reader.read(i);
+                Premultiplier.convert(image, frame.clear().asIntBuffer());
+                writeFully(channel, frame, offset);
+                index.putLong(offset).putInt(getDelay(reader, i)).putInt(0);
+                offset = align(offset + frameBytes);
+            }
+            writeFully(channel, index.flip(), HEADER_BYTES);
+            writeFully(channel, header, 0);
+        }
+    }
+
+    /**
+     * Loads the frames of an image resource from the cache directory. If the
+     * directory does not yet hold a valid frame file for the resource, the
+     * resource is decoded and transcoded into the directory first.
+     *
+     * @param type the class used to find the resource
+     * @param name the name of the resource
+     * @return the frames of the image, or {@code null} if the cache is not
+     * enabled
+     * @throws IOException if an error occurs reading the resource or the
+     * cache
+     */
+    public static FrameFile load(Class<?> type, String name) throws IOException {
+        if (CACHE_DIR == null) {
+            return null;
+        }
+        byte[] data;
+        try (var input = type.getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            data = input.readAllBytes();
+        }
+        byte[] digest = hash(data);
+        Path dir = Path.of(CACHE_DIR);
+        Path path = dir.resolve(String.format("%064x", new BigInteger(1, digest)) + SUFFIX);
+        if (Files.isRegularFile(path)) {
+            try {
+                var file = new FrameFile(path);
+                if (Arrays.equals(file.hash, digest)) {
+                    return file;
+                }
+                file.close();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+        Files.createDirectories(dir);
+        try (var stream = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            var readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Error reading image");
+            }
+            ImageReader reader = readers.next();
+            reader.setInput(stream);
+            Path temp = Files.createTempFile(dir, "frames", SUFFIX);
+            try {
+                write(reader, digest, temp);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                reader.dispose();
+                Files.deleteIfExists(temp);
+            }
+        }
+        return new FrameFile(path);
+    }
+
+    /**
+     * Opens a frame file and reads its header and index.
+     *
+     * @param path the frame file
+     * @throws IOException if an error occurs reading the file or if the file
+     * is not a valid frame file
+     */
+    public FrameFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            var header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Error reading frame file");
+            }
+            width = header.getInt();
+            height = header.getInt();
+            count = header.getInt();
+            header.getInt();
+            hash = new byte[HASH_BYTES];
+            header.get(hash);
+            long frameBytes = (long) width * height * Integer.BYTES;
+            long size = channel.size();
+            if (width <= 0 || height <= 0 || frameBytes > Integer.MAX_VALUE
+                    || count <= 0 || count > (size - HEADER_BYTES) / ENTRY_BYTES) {
+                throw new IOException("Error reading frame file");
+            }
+            var index = ByteBuffer.allocate(count * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, index, HEADER_BYTES);
+            index.flip();
+            offsets = new long[count];
+            delays = new int[count];
+            long next = HEADER_BYTES + (long) count * ENTRY_BYTES;
+            for (int i = 0; i < count; i++) {
+                offsets[i] = index.getLong();
+                delays[i] = index.getInt();
+                index.getInt();
+                if (offsets[i] < next || offsets[i] % ALIGNMENT != 0 || offsets[i] > size - frameBytes) {
+                    throw new IOException("Error reading frame file");
+                }
+                next = offsets[i] + frameBytes;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the file channel, for mapping the frames into memory.
+     *
+     * @return the open channel of the frame file
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the width of the frames.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the frames.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of frames in the file.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return count;
+    }
+
+    /**
+     * Gets the position of a frame in the file.
+     *
+     * @param index the index of the frame
+     * @return the offset of the frame in bytes from the start of the file
+     */
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Gets the delay of a frame.
+     *
+     * @param index the index of the frame
+     * @return the time to show the frame in milliseconds, or zero if the
+     * source had no delay
+     */
+    public int getDelay(int index) {
+        return delays[index];
+    }
+
+    /**
+     * Reads a frame into an array.
+     *
+     * @param index the index of the frame
+     * @param pixels the array to receive the pixels in the INT_ARGB_PRE format
+     * @throws IOException if an error occurs reading the file
+     */
+    public void read(int index, int[] pixels) throws IOException {
+        var buffer = ByteBuffer.allocate(width * height * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, offsets[index]);
+        buffer.flip().asIntBuffer().get(pixels, 0, width * height);
+    }
+
+    /**
+     * Reads a frame into a new AWT image.
+     *
+     * @param index the index of the frame
+     * @return an image of type TYPE_INT_ARGB_PRE
+     * @throws IOException if an error occurs reading the file
+     */
+    public BufferedImage readImage(int index) throws IOException {
+        var buffer = IntBuffer.allocate(width * height);
+        read(index, buffer.array());
+        return SharedImage.createBufferedImage(buffer, width, height);
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if an error occurs closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
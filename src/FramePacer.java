@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Decides on each pulse whether the next frame of an animation is due, from
+ * the delay of the frame on screen. An animation timer asks {@link #isDue}
+ * at the start of {@code handle(long now)} and returns at once when the
+ * current frame should stay on screen, with no conversion and no call to
+ * {@code updateBuffer}. The deadline of each frame is counted from the
+ * deadline of the one before rather than from the pulse that showed it, so
+ * the animation keeps its rate when the pulses do not line up with the
+ * delays. When the animation falls more than a frame behind, it starts over
+ * from the current pulse instead of rushing to catch up.
+ * <p>
+ * Like web browsers, the pacer treats a delay of ten milliseconds or less as
+ * the conventional default of 100 milliseconds, since many GIF files use a
+ * delay of zero and expect a viewer to slow them down.
+ */
+public class FramePacer {
+
+    private static final int MIN_DELAY = 10;
+    private static final int DEFAULT_DELAY = 100;
+    private static final long MILLISECOND = 1_000_000L;
+
+    private long deadline;
+    private boolean started;
+
+    /**
+     * Makes the next frame due on the next pulse, as when the animation
+     * starts or resumes.
+     */
+    public void reset() {
+        started = false;
+    }
+
+    /**
+     * Checks whether the next frame is due.
+     *
+     * @param now the timestamp of the current pulse in nanoseconds
+     * @return {@code true} if the next frame should be shown on this pulse;
+     * otherwise {@code false}
+     */
+    public boolean isDue(long now) {
+        return !started || now >= deadline;
+    }
+
+    /**
+     * Records that a frame was shown on this pulse.
+     *
+     * @param now the timestamp of the current pulse in nanoseconds
+     * @param delay the delay of the frame in milliseconds
+     */
+    public void shown(long now, int delay) {
+        long duration = (delay <= MIN_DELAY ? DEFAULT_DELAY : delay) * MILLISECOND;
+        if (!started || now - deadline >= duration) {
+            deadline = now + duration;
+        } else {
+            deadline += duration;
+        }
+        started = true;
+    }
+}
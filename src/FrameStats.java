@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of the frames rendered by an animation timer. The timer calls
+ * {@link #start} when it starts, {@link #pulse} at the start of each
+ * {@code handle(long now)} and {@link #record} after it has converted and
+ * published the frame. The statistics are exposed as an MBean under the name
+ * {@code org.status6.pixelbuffer:type=Animator}. The methods that update the
+ * statistics are synchronized, so that a reset from a JMX client is applied
+ * whole between two updates on the JavaFX Application Thread.
+ * <p>
+ * Jitter is the difference between the time from one pulse to the next and
+ * the nominal pulse period, given by the {@code javafx.animation.pulse}
+ * property. A frame is late when its pulse arrives more than half a period
+ * after it was due, and the number of frames dropped is the number of whole
+ * periods skipped.
+ */
+public class FrameStats implements FrameStatsMBean {
+
+    private static final String NAME = "org.status6.pixelbuffer:type=Animator";
+    private static final int DEFAULT_PULSE = 60;
+    private static final double MICROSECOND = 1000.0;
+
+    private final long period;
+    private final Histogram convertTime;
+    private final Histogram updateTime;
+    private final Histogram jitter;
+
+    private volatile String variant;
+    private volatile long frameCount;
+    private volatile long lateFrames;
+    private volatile long droppedFrames;
+    private volatile long bytesCopied;
+
+    private long previous;
+
+    /**
+     * Creates the statistics for an animation.
+     */
+    public FrameStats() {
+        variant = "";
+        period = 1_000_000_000L / Integer.getInteger("javafx.animation.pulse", DEFAULT_PULSE);
+        convertTime = new Histogram();
+        updateTime = new Histogram();
+        jitter = new Histogram();
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server.
+     */
+    public void register() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Starts measuring an animation timer. The statistics are discarded if
+     * the timer is not the one measured before, and the time since the last
+     * pulse is never counted, so pausing the animation does not show up as
+     * dropped frames.
+     *
+     * @param variant the name of the animation timer
+     */
+    public synchronized void start(String variant) {
+        if (!variant.equals(this.variant)) {
+            this.variant = variant;
+            reset();
+        }
+        previous = 0;
+    }
+
+    /**
+     * Records the timestamp of a pulse.
+     *
+     * @param now the timestamp of the current frame in nanoseconds
+     */
+    public synchronized void pulse(long now) {
+        if (previous != 0) {
+            long interval = now - previous;
+            jitter.record(Math.abs(interval - period));
+            if (interval > period + period / 2) {
+                lateFrames++;
+                droppedFrames += Math.round((double) interval / period) - 1;
+            }
+        }
+        previous = now;
+    }
+
+    /**
+     * Records the time taken to convert and publish a frame.
+     *
+     * @param start the value of {@code System.nanoTime} before the conversion
+     * @param converted the value after the conversion
+     * @param updated the value after the call to {@code updateBuffer}
+     */
+    public void record(long start, long converted, long updated) {
+        record(start, converted, updated, 0);
+    }
+
+    /**
+     * Records the time taken to convert and publish a frame, and the number
+     * of bytes of pixels copied to do so.
+     *
+     * @param start the value of {@code System.nanoTime} before the conversion
+     * @param converted the value after the conversion
+     * @param updated the value after the call to {@code updateBuffer}
+     * @param bytes the number of bytes written into intermediate arrays and
+     * into the JavaFX image or pixel buffer
+     */
+    public synchronized void record(long start, long converted, long updated, long bytes) {
+        convertTime.record(converted - start);
+        updateTime.record(updated - converted);
+        bytesCopied += bytes;
+        frameCount++;
+    }
+
+    /**
+     * Summarizes the statistics on a few lines of text.
+     *
+     * @return the summary for an on-screen display
+     */
+    public String summary() {
+        long frames = getFrameCount();
+        return String.format("%s%nframes %d  late %d  dropped %d%n"
+                + "convert %.0f us (99%% %.0f)%nupdate %.0f us (99%% %.0f)%n"
+                + "jitter %.0f us (99%% %.0f, max %.0f)%ncopied %d bytes/frame",
+                getVariant(), frames, getLateFrames(), getDroppedFrames(),
+                getConvertTimeMean(), getConvertTime99(),
+                getUpdateTimeMean(), getUpdateTime99(),
+                getJitterMean(), getJitter99(), getJitterMax(),
+                frames == 0 ? 0 : getBytesCopied() / frames);
+    }
+
+    @Override
+    public String getVariant() {
+        return variant;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    @Override
+    public double getConvertTimeMean() {
+        return convertTime.getMean() / MICROSECOND;
+    }
+
+    @Override
+    public double getConvertTime99() {
+        return convertTime.getPercentile(99) / MICROSECOND;
+    }
+
+    @Override
+    public double getUpdateTimeMean() {
+        return updateTime.getMean() / MICROSECOND;
+    }
+
+    @Override
+    public double getUpdateTime99() {
+        return updateTime.getPercentile(99) / MICROSECOND;
+    }
+
+    @Override
+    public double getJitterMean() {
+        return jitter.getMean() / MICROSECOND;
+    }
+
+    @Override
+    public double getJitter99() {
+        return jitter.getPercentile(99) / MICROSECOND;
+    }
+
+    @Override
+    public double getJitterMax() {
+        return jitter.getMax() / MICROSECOND;
+    }
+
+    @Override
+    public synchronized void reset() {
+        convertTime.reset();
+        updateTime.reset();
+        jitter.reset();
+        frameCount = 0;
+        lateFrames = 0;
+        droppedFrames = 0;
+        bytesCopied = 0;
+        previous = 0;
+    }
+}
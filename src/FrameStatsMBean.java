@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The management interface of the {@link FrameStats} of an animation. All
+ * times are in microseconds, and the bytes copied are the total for all
+ * frames.
+ */
+public interface FrameStatsMBean {
+
+    String getVariant();
+
+    long getFrameCount();
+
+    long getLateFrames();
+
+    long getDroppedFrames();
+
+    long getBytesCopied();
+
+    double getConvertTimeMean();
+
+    double getConvertTime99();
+
+    double getUpdateTimeMean();
+
+    double getUpdateTime99();
+
+    double getJitterMean();
+
+    double getJitter99();
+
+    double getJitterMax();
+
+    void reset();
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A stream of animation frames decoded on a background thread. The decoder
+ * reads the frames of a GIF file one at a time, converts each to the
+ * INT_ARGB_PRE format, and places it in a bounded ring of ready frames,
+ * looping back to the first frame at the end of the file. The consumer takes
+ * the next ready frame with {@link #poll} and gives its array back with
+ * {@link #recycle} once it has been copied. The memory used is fixed by the
+ * size of the ring, regardless of the number of frames in the file. The delay
+ * of each frame travels with it through the ring and is available from
+ * {@link #getDelay} once the frame is taken.
+ */
+public class FrameStream implements AutoCloseable {
+
+    private final InputStream input;
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final BlockingQueue<int[]> ready;
+    private final BlockingQueue<Integer> readyDelays;
+    private final BlockingQueue<int[]> free;
+    private final Thread decoder;
+
+    private int delay;
+
+    /**
+     * Opens the GIF file and starts decoding its frames.
+     *
+     * @param filename the name of the GIF resource
+     * @param capacity the number of frames in the ring
+     * @throws IOException if an error occurs reading the file header
+     */
+    public FrameStream(String filename, int capacity) throws IOException {
+        input = FrameStream.class.getResourceAsStream(filename);
+        if (input == null) {
+            throw new IOException("Error loading image");
+        }
+        stream = ImageIO.createImageInputStream(input);
+        reader = ImageIO.getImageReadersByFormatName("gif").next();
+        reader.setInput(stream);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        ready = new ArrayBlockingQueue<>(capacity);
+        readyDelays = new ArrayBlockingQueue<>(capacity);
+        free = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.add(new int[width * height]);
+        }
+        decoder = new Thread(this::decode, "FrameStream");
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    private void decode() {
+        int index = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                BufferedImage frame;
+                try {
+                    frame = reader.read(index);
+                } catch (IndexOutOfBoundsException e) {
+                    if (index == 0) {
+                        throw new IOException("Error reading GIF image");
+                    }
+                    index = 0;
+                    continue;
+                }
+                int[] pixels = free.take();
+                Premultiplier.convert(frame, IntBuffer.wrap(pixels));
+                // Adds the delay first, so it is there when the frame is taken.
+                readyDelays.put(FrameFile.getDelay(reader, index));
+                ready.put(pixels);
+                index++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    /**
+     * Gets the width of the frames.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the frames.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Takes the next decoded frame, if one is ready.
+     *
+     * @return the pixels of the next frame in the INT_ARGB_PRE format, or
+     * {@code null} if the decoder has not yet finished the frame
+     */
+    public int[] poll() {
+        int[] pixels = ready.poll();
+        if (pixels != null) {
+            delay = readyDelays.remove();
+        }
+        return pixels;
+    }
+
+    /**
+     * Gets the delay of the frame last taken with {@link #poll}.
+     *
+     * @return the time to show the frame in milliseconds, or zero if the
+     * file gives no delay
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Gives back the array of a frame taken with {@link #poll} so that the
+     * decoder can reuse it.
+     *
+     * @param pixels the array of the frame no longer needed
+     */
+    public void recycle(int[] pixels) {
+        free.offer(pixels);
+    }
+
+    /**
+     * Stops the decoder and closes the file.
+     *
+     * @throws IOException if an error occurs closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        decoder.interrupt();
+        try {
+            decoder.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.dispose();
+        stream.close();
+        input.close();
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * A decoder of animated GIF files that writes each frame directly into the
+ * buffer of a {@code PixelBuffer} in the INT_ARGB_PRE format. The buffer
+ * holds the composed animation: each frame is decoded from its LZW data
+ * straight into its rectangle of the buffer, skipping its transparent pixels
+ * so that the previous frames show through, after the disposal method of the
+ * previous frame has been applied. No image or array of indices is made for
+ * a frame, and the region returned for {@code updateBuffer} covers only the
+ * pixels that changed.
+ * <p>
+ * The decoder reads the global and local color tables, the transparent
+ * color index, delay and disposal method of the Graphic Control Extension,
+ * the frame offsets, and interlaced frames. A disposal to the background
+ * clears the rectangle of the frame to transparent, as web browsers do, and
+ * the animation is cleared to transparent each time it starts over.
+ */
+public class GifDecoder {
+
+    private static final int MAX_CODES = 4096;
+
+    private static final int DISPOSE_BACKGROUND = 2;
+    private static final int DISPOSE_PREVIOUS = 3;
+
+    private static class Frame {
+
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final boolean interlaced;
+        private final int[] palette;
+        private final int transparent;
+        private final int disposal;
+        private final int delay;
+        private final int data;
+
+        Frame(int x, int y, int width, int height, boolean interlaced, int[] palette,
+                int transparent, int disposal, int delay, int data) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.interlaced = interlaced;
+            this.palette = palette;
+            this.transparent = transparent;
+            this.disposal = disposal;
+            this.delay = delay;
+            this.data = data;
+        }
+    }
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final List<Frame> frames;
+
+    private final short[] prefix = new short[MAX_CODES];
+    private final byte[] suffix = new byte[MAX_CODES];
+    private final byte[] stack = new byte[MAX_CODES + 1];
+
+    private int[] saved;
+    private int index;
+    private Frame previous;
+
+    // The state of the reader of LZW codes.
+    private int position;
+    private int blockEnd;
+    private int bits;
+    private int bitCount;
+
+    /**
+     * Reads the structure of a GIF file, without decoding its frames.
+     *
+     * @param data the contents of the GIF file
+     * @throws IOException if the file is not a valid GIF file
+     */
+    public GifDecoder(byte[] data) throws IOException {
+        this.data = data;
+        if (data.length < 13 || data[0] != 'G' || data[1] != 'I' || data[2] != 'F') {
+            throw new IOException("Error reading GIF image");
+        }
+        width = readShort(6);
+        height = readShort(8);
+        int flags = data[10] & 0xff;
+        int pos = 13;
+        int[] global = null;
+        if ((flags & 0x80) != 0) {
+            int size = 2 << (flags & 0x07);
+            global = readPalette(pos, size);
+            pos += 3 * size;
+        }
+        frames = new ArrayList<>();
+        int transparent = -1;
+        int disposal = 0;
+        int delay = 0;
+        try {
+            while (true) {
+                int block = data[pos++] & 0xff;
+                if (block == 0x2C) {
+                    int x = readShort(pos);
+                    int y = readShort(pos + 2);
+                    int w = readShort(pos + 4);
+                    int h = readShort(pos + 6);
+                    int imageFlags = data[pos + 8] & 0xff;
+                    pos += 9;
+                    int[] palette = global;
+                    if ((imageFlags & 0x80) != 0) {
+                        int size = 2 << (imageFlags & 0x07);
+                        palette = readPalette(pos, size);
+                        pos += 3 * size;
+                    }
+                    if (palette == null) {
+                        throw new IOException("Error reading GIF image");
+                    }
+                    int start = pos;
+                    pos = skipBlocks(pos + 1);
+                    frames.add(new Frame(x, y, w, h, (imageFlags & 0x40) != 0, palette,
+                            transparent, disposal, delay, start));
+                    transparent = -1;
+                    disposal = 0;
+                    delay = 0;
+                } else if (block == 0x21) {
+                    int label = data[pos++] & 0xff;
+                    if (label == 0xF9 && (data[pos] & 0xff) >= 4) {
+                        int packed = data[pos + 1] & 0xff;
+                        disposal = (packed >> 2) & 0x07;
+                        delay = readShort(pos + 2) * 10;
+                        transparent = (packed & 0x01) != 0 ? data[pos + 4] & 0xff : -1;
+                    }
+                    pos = skipBlocks(pos);
+                } else if (block == 0x3B) {
+                    break;
+                } else {
+                    throw new IOException("Error reading GIF image");
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Keeps the complete frames read before the end of a truncated file.
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("Error reading GIF image");
+        }
+    }
+
+    private int readShort(int pos) {
+        return (data[pos] & 0xff) | (data[pos + 1] & 0xff) << 8;
+    }
+
+    private int[] readPalette(int pos, int size) {
+        int[] palette = new int[256];
+        for (int i = 0; i < size; i++) {
+            int r = data[pos++] & 0xff;
+            int g = data[pos++] & 0xff;
+            int b = data[pos++] & 0xff;
+            // Opaque colors are the same whether premultiplied or not.
+            palette[i] = 0xff000000 | r << 16 | g << 8 | b;
+        }
+        return palette;
+    }
+
+    private int skipBlocks(int pos) {
+        int size = data[pos++] & 0xff;
+        while (size != 0) {
+            pos += size;
+            size = data[pos++] & 0xff;
+        }
+        return pos;
+    }
+
+    /**
+     * Gets the width of the animation.
+     *
+     * @return the width of the logical screen in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the animation.
+     *
+     * @return the height of the logical screen in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of frames in the animation.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * Gets the delay of a frame.
+     *
+     * @param index the index of the frame
+     * @return the time to show the frame in milliseconds, or zero if the
+     * file gives no delay
+     */
+    public int getDelay(int index) {
+        return frames.get(index).delay;
+    }
+
+    /**
+     * Gets the index of the frame to be decoded next.
+     *
+     * @return the index of the next frame
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    private int readCode(int size) {
+        while (bitCount < size) {
+            if (position == blockEnd) {
+                if (position >= data.length) {
+                    return -1;
+                }
+                int length = data[position++] & 0xff;
+                if (length == 0 || position + length > data.length) {
+                    return -1;
+                }
+                blockEnd = position + length;
+            }
+            bits |= (data[position++] & 0xff) << bitCount;
+            bitCount += 8;
+        }
+        int code = bits & ((1 << size) - 1);
+        bits >>>= size;
+        bitCount -= size;
+        return code;
+    }
+
+    private static int interlacedRow(int row, int height) {
+        int pass1 = (height + 7) / 8;
+        if (row < pass1) {
+            return row * 8;
+        }
+        row -= pass1;
+        int pass2 = (height + 3) / 8;
+        if (row < pass2) {
+            return row * 8 + 4;
+        }
+        row -= pass2;
+        int pass3 = (height + 1) / 4;
+        if (row < pass3) {
+            return row * 4 + 2;
+        }
+        return (row - pass3) * 2 + 1;
+    }
+
+    private void fill(IntBuffer canvas, int x, int y, int w, int h, int value) {
+        for (int row = y; row < y + h; row++) {
+            int offset = row * width;
+            if (canvas.hasArray()) {
+                int start = canvas.arrayOffset() + offset;
+                Arrays.fill(canvas.array(), start + x, start + x + w, value);
+            } else {
+                for (int col = x; col < x + w; col++) {
+                    canvas.put(offset + col, value);
+                }
+            }
+        }
+    }
+
+    private void copy(IntBuffer canvas, int x, int y, int w, int h, boolean save) {
+        for (int row = 0; row < h; row++) {
+            int offset = (y + row) * width + x;
+            for (int col = 0; col < w; col++) {
+                if (save) {
+                    saved[row * w + col] = canvas.get(offset + col);
+                } else {
+                    canvas.put(offset + col, saved[row * w + col]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the next frame into the buffer holding the animation, looping
+     * back to the first frame after the last. The buffer must hold the frame
+     * before, as left by the previous call, unless the next frame is the
+     * first.
+     *
+     * @param canvas the buffer of the animation in the INT_ARGB_PRE format,
+     * with {@code width * height} pixels
+     * @return the region of the buffer that changed
+     */
+    public Rectangle2D next(IntBuffer canvas) {
+        Frame frame = frames.get(index);
+        int x = Math.min(frame.x, width);
+        int y = Math.min(frame.y, height);
+        int w = Math.min(frame.width, width - x);
+        int h = Math.min(frame.height, height - y);
+
+        int minX = x;
+        int minY = y;
+        int maxX = x + w;
+        int maxY = y + h;
+        if (index == 0) {
+            fill(canvas, 0, 0, width, height, 0);
+            minX = 0;
+            minY = 0;
+            maxX = width;
+            maxY = height;
+        } else if (previous != null) {
+            int px = Math.min(previous.x, width);
+            int py = Math.min(previous.y, height);
+            int pw = Math.min(previous.width, width - px);
+            int ph = Math.min(previous.height, height - py);
+            if (previous.disposal == DISPOSE_BACKGROUND) {
+                fill(canvas, px, py, pw, ph, 0);
+            } else if (previous.disposal == DISPOSE_PREVIOUS) {
+                copy(canvas, px, py, pw, ph, false);
+            }
+            if (previous.disposal == DISPOSE_BACKGROUND || previous.disposal == DISPOSE_PREVIOUS) {
+                minX = Math.min(minX, px);
+                minY = Math.min(minY, py);
+                maxX = Math.max(maxX, px + pw);
+                maxY = Math.max(maxY, py + ph);
+            }
+        }
+        if (frame.disposal == DISPOSE_PREVIOUS) {
+            if (saved == null || saved.length < w * h) {
+                saved = new int[w * h];
+            }
+            copy(canvas, x, y, w, h, true);
+        }
+        decode(frame, canvas, x, y, w, h);
+        previous = frame;
+        index = index == frames.size() - 1 ? 0 : index + 1;
+        if (maxX <= minX || maxY <= minY) {
+            return Rectangle2D.EMPTY;
+        }
+        return new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private void decode(Frame frame, IntBuffer canvas, int x, int y, int w, int h) {
+        int[] palette = frame.palette;
+        int transparent = frame.transparent;
+        int[] array = canvas.hasArray() ? canvas.array() : null;
+        int base = canvas.hasArray() ? canvas.arrayOffset() : 0;
+
+        int minCodeSize = data[frame.data] & 0xff;
+        if (minCodeSize < 1 || minCodeSize > 11) {
+            return;
+        }
+        position = frame.data + 1;
+        blockEnd = position;
+        bits = 0;
+        bitCount = 0;
+
+        int clear = 1 << minCodeSize;
+        int end = clear + 1;
+        int available = clear + 2;
+        int codeSize = minCodeSize + 1;
+        int old = -1;
+        int first = 0;
+        for (int code = 0; code < clear; code++) {
+            prefix[code] = 0;
+            suffix[code] = (byte) code;
+        }
+
+        // Counts the pixels of the frame rectangle in the order stored.
+        int count = frame.width * frame.height;
+        int done = 0;
+        int column = 0;
+        int row = 0;
+        int offset = rowOffset(frame, row, y);
+
+        while (done < count) {
+            int code = readCode(codeSize);
+            if (code < 0 || code == end) {
+                break;
+            }
+            if (code == clear) {
+                codeSize = minCodeSize + 1;
+                available = clear + 2;
+                old = -1;
+                continue;
+            }
+            int top = 0;
+            int in = code;
+            if (old == -1) {
+                if (code >= clear) {
+                    break;
+                }
+                first = code;
+                stack[top++] = (byte) code;
+            } else {
+                if (code > available || code == available && available >= MAX_CODES) {
+                    break;
+                }
+                if (code == available) {
+                    stack[top++] = (byte) first;
+                    code = old;
+                }
+                while (code >= clear) {
+                    stack[top++] = suffix[code];
+                    code = prefix[code];
+                }
+                first = suffix[code] & 0xff;
+                stack[top++] = (byte) first;
+                if (available < MAX_CODES) {
+                    prefix[available] = (short) old;
+                    suffix[available] = (byte) first;
+                    available++;
+                    if ((available & (available - 1)) == 0 && available < MAX_CODES) {
+                        codeSize++;
+                    }
+                }
+            }
+            old = in;
+
+            while (top > 0 && done < count) {
+                int pixel = stack[--top] & 0xff;
+                if (pixel != transparent && column < w && offset >= 0) {
+                    int target = offset + x + column;
+                    if (array != null) {
+                        array[base + target] = palette[pixel];
+                    } else {
+                        canvas.put(target, palette[pixel]);
+                    }
+                }
+                done++;
+                if (++column == frame.width) {
+                    column = 0;
+                    row++;
+                    offset = row < frame.height ? rowOffset(frame, row, y) : -1;
+                }
+            }
+        }
+    }
+
+    private int rowOffset(Frame frame, int row, int y) {
+        int line = frame.interlaced ? interlacedRow(row, frame.height) : row;
+        int canvasRow = frame.y + line;
+        if (canvasRow < y || canvasRow >= height) {
+            return -1;
+        }
+        return canvasRow * width;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+/**
+ * A sequence of pre-rendered frames in the BYTE_BGRA_PRE format, memory-mapped
+ * from a {@link FrameFile}. Each frame is a slice of the mapping, exposed
+ * through its own {@link PixelBuffer}, so the frames are read directly from
+ * the page cache with no decoding and no copy into the Java heap. The file is
+ * mapped in segments of at most one gigabyte, each holding a whole number of
+ * frames counted by their 64-byte-aligned stride in the file, so the length
+ * of the file is not limited by the heap or by the maximum size of a single
+ * buffer.
+ */
+public class MappedFrames implements AutoCloseable {
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int ALIGNMENT = 64;
+
+    private final FrameFile file;
+    private final int width;
+    private final int height;
+    private final int count;
+    private final int frameBytes;
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+    private final WritableImage[] images;
+
+    /**
+     * Writes the frames of a GIF file into a new file of pre-rendered frames,
+     * decoding and converting one frame at a time.
+     *
+     * @param source the GIF file
+     * @param target the file of pre-rendered frames
+     * @throws IOException if an error occurs reading or writing the files
+     */
+    public static void write(Path source, Path target) throws IOException {
+        byte[] hash = FrameFile.hash(Files.readAllBytes(source));
+        try (var input = ImageIO.createImageInputStream(source.toFile())) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(input);
+            try {
+                FrameFile.write(reader, hash, target);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Opens a file of pre-rendered frames.
+     *
+     * @param path the file of frames
+     * @throws IOException if an error occurs reading the file or if the file
+     * is not in the expected format
+     */
+    public MappedFrames(Path path) throws IOException {
+        file = new FrameFile(path);
+        width = file.getWidth();
+        height = file.getHeight();
+        count = file.getFrameCount();
+        frameBytes = width * height * Integer.BYTES;
+        long stride = (frameBytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        framesPerSegment = (int) Math.max(1, SEGMENT_BYTES / stride);
+        segments = new MappedByteBuffer[(count + framesPerSegment - 1) / framesPerSegment];
+        images = new WritableImage[count];
+    }
+
+    /**
+     * Gets the width of the frames.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the frames.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of frames in the file.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return count;
+    }
+
+    /**
+     * Gets the delay of a frame.
+     *
+     * @param index the index of the frame
+     * @return the time to show the frame in milliseconds, or zero if the
+     * source had no delay
+     */
+    public int getDelay(int index) {
+        return file.getDelay(index);
+    }
+
+    /**
+     * Gets the pixels of a frame as a slice of the mapped file.
+     *
+     * @param index the index of the frame
+     * @return a read-only direct buffer in the BYTE_BGRA_PRE format
+     * @throws IOException if an error occurs mapping the file
+     */
+    public ByteBuffer getFrame(int index) throws IOException {
+        int segment = index / framesPerSegment;
+        int first = segment * framesPerSegment;
+        long base = file.getOffset(first);
+        if (segments[segment] == null) {
+            int last = Math.min(first + framesPerSegment, count) - 1;
+            long length = file.getOffset(last) + frameBytes - base;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Error mapping frame file");
+            }
+            segments[segment] = file.getChannel().map(FileChannel.MapMode.READ_ONLY, base, length);
+        }
+        int offset = (int) (file.getOffset(index) - base);
+        return segments[segment].slice(offset, frameBytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets an image of a frame backed by the mapped file. The image of each
+     * frame is created on the first call and returned again on later calls,
+     * so that the renderer can keep its texture instead of creating and
+     * uploading a new one every time the frame is shown.
+     *
+     * @param index the index of the frame
+     * @return an image whose pixel buffer is a slice of the mapped file
+     * @throws IOException if an error occurs mapping the file
+     */
+    public WritableImage getImage(int index) throws IOException {
+        if (images[index] == null) {
+            var pixelBuffer = new PixelBuffer<>(width, height, getFrame(index), PixelFormat.getByteBgraPreInstance());
+            images[index] = new WritableImage(pixelBuffer);
+        }
+        return images[index];
+    }
+
+    /**
+     * Closes the file. The mapped segments remain valid until they are
+     * garbage collected.
+     *
+     * @throws IOException if an error occurs closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Writes the frames of a GIF file into a file of pre-rendered frames.
+     *
+     * @param args the GIF file and the file of frames
+     * @throws IOException if an error occurs reading or writing the files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MappedFrames input.gif output.pxbf");
+            return;
+        }
+        write(Path.of(args[0]), Path.of(args[1]));
+    }
+}
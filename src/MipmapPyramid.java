@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * A pyramid of premultiplied images, each half the width and height of the
+ * one before, down to a single pixel. Each level is made from the previous
+ * level with a two-by-two box filter, which averages premultiplied pixels
+ * correctly without darkening the edges of transparent areas. The rows of
+ * each level are filtered in bands on the common fork-join pool, like
+ * {@link BandedConverter}. Every level has its own {@link PixelBuffer}, so
+ * showing an image small uploads only the pixels of the level chosen for the
+ * scale, and the renderer scales that level by a factor between one half and
+ * one. Pyramids are built once and kept for as long as their source image is
+ * in use.
+ */
+public class MipmapPyramid {
+
+    private static final Map<BufferedImage, MipmapPyramid> CACHE = new WeakHashMap<>();
+
+    /**
+     * The number of pixels below which a band is not split any further.
+     */
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    /**
+     * The tolerance for rounding error when a scale falls exactly on a level,
+     * such as after two zoom steps of the square root of two.
+     */
+    private static final double LEVEL_EPSILON = 1e-9;
+
+    private static class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient int[] src;
+        private final transient int[] dst;
+        private final int srcWidth;
+        private final int srcHeight;
+        private final int dstWidth;
+        private final int minY;
+        private final int maxY;
+
+        Band(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int minY, int maxY) {
+            this.src = src;
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
+            this.dst = dst;
+            this.dstWidth = dstWidth;
+            this.minY = minY;
+            this.maxY = maxY;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = maxY - minY;
+            if (rows < 2 || (long) rows * dstWidth <= BAND_PIXELS) {
+                reduce(src, srcWidth, srcHeight, dst, dstWidth, minY, maxY);
+            } else {
+                int midY = minY + rows / 2;
+                invokeAll(new Band(src, srcWidth, srcHeight, dst, dstWidth, minY, midY),
+                        new Band(src, srcWidth, srcHeight, dst, dstWidth, midY, maxY));
+            }
+        }
+    }
+
+    private final List<int[]> levels;
+    private final List<WritableImage> images;
+
+    /**
+     * Gets the pyramid of an image, building it on first use.
+     *
+     * @param image the source image
+     * @return the pyramid of the image
+     */
+    public static synchronized MipmapPyramid of(BufferedImage image) {
+        return CACHE.computeIfAbsent(image, MipmapPyramid::new);
+    }
+
+    private static int average(int p0, int p1, int p2, int p3) {
+        int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+        int r = ((p0 >> 16 & 0xff) + (p1 >> 16 & 0xff) + (p2 >> 16 & 0xff) + (p3 >> 16 & 0xff) + 2) >> 2;
+        int g = ((p0 >> 8 & 0xff) + (p1 >> 8 & 0xff) + (p2 >> 8 & 0xff) + (p3 >> 8 & 0xff) + 2) >> 2;
+        int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static void reduce(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int minY, int maxY) {
+        for (int y = minY; y < maxY; y++) {
+            int row0 = 2 * y * srcWidth;
+            int row1 = Math.min(2 * y + 1, srcHeight - 1) * srcWidth;
+            int offset = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                dst[offset + x] = average(src[row0 + x0], src[row0 + x1], src[row1 + x0], src[row1 + x1]);
+            }
+        }
+    }
+
+    private MipmapPyramid(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        levels = new ArrayList<>();
+        images = new ArrayList<>();
+        int[] pixels = new int[width * height];
+        BandedConverter.convert(image, IntBuffer.wrap(pixels));
+        int levelWidth = width;
+        int levelHeight = height;
+        add(pixels, levelWidth, levelHeight);
+        while (levelWidth > 1 || levelHeight > 1) {
+            int nextWidth = (levelWidth + 1) / 2;
+            int nextHeight = (levelHeight + 1) / 2;
+            int[] next = new int[nextWidth * nextHeight];
+            if ((long) levelWidth * levelHeight < BandedConverter.PARALLEL_PIXELS
+                    || ForkJoinPool.getCommonPoolParallelism() < 2) {
+                reduce(pixels, levelWidth, levelHeight, next, nextWidth, 0, nextHeight);
+            } else {
+                ForkJoinPool.commonPool().invoke(new Band(pixels, levelWidth, levelHeight,
+                        next, nextWidth, 0, nextHeight));
+            }
+            pixels = next;
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+            add(pixels, levelWidth, levelHeight);
+        }
+    }
+
+    private void add(int[] pixels, int levelWidth, int levelHeight) {
+        var pixelBuffer = new PixelBuffer<>(levelWidth, levelHeight, IntBuffer.wrap(pixels),
+                PixelFormat.getIntArgbPreInstance());
+        levels.add(pixels);
+        images.add(new WritableImage(pixelBuffer));
+    }
+
+    /**
+     * Gets the number of levels in the pyramid of an image of the given size,
+     * without building it.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the number of levels, including the full-size level zero
+     */
+    public static int getLevelCount(int width, int height) {
+        int count = 1;
+        while (width > 1 || height > 1) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of levels in the pyramid.
+     *
+     * @return the number of levels, including the full-size level zero
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * Chooses the smallest level that is still at least as large as the image
+     * shown at a scale, so that the level is only ever reduced on screen.
+     *
+     * @param scale the ratio of the displayed size to the full size
+     * @return the index of the level
+     */
+    public int getLevel(double scale) {
+        if (scale >= 1) {
+            return 0;
+        }
+        int level = (int) Math.floor(Math.log(1 / scale) / Math.log(2) + LEVEL_EPSILON);
+        return Math.min(level, levels.size() - 1);
+    }
+
+    /**
+     * Gets the pixels of a level.
+     *
+     * @param level the index of the level
+     * @return the pixels in the INT_ARGB_PRE format
+     */
+    public int[] getPixels(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * Gets the image of a level.
+     *
+     * @param level the index of the level
+     * @return the image backed by the pixel buffer of the level
+     */
+    public WritableImage getImage(int level) {
+        return images.get(level);
+    }
+}
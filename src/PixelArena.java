@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An arena of direct buffers for the pixels of a {@code PixelBuffer}, which
+ * frees the native memory of each buffer as soon as it is given back instead
+ * of waiting for the garbage collector to find the buffer unreachable. The
+ * arena counts the bytes it has allocated and not yet freed, and the highest
+ * such count, so that a program can report its use of native memory.
+ * <p>
+ * A buffer must not be freed while an image backed by it may still be drawn.
+ * Free a buffer only after its image has been replaced on screen and a later
+ * pulse has rendered the scene, since the renderer reads the buffer on its
+ * own thread. Any access to a buffer after it is freed reads or writes memory
+ * that is no longer allocated.
+ * <p>
+ * The memory is freed with the cleaner of the buffer, through
+ * {@code sun.misc.Unsafe.invokeCleaner} in the {@code jdk.unsupported}
+ * module. Where that method is not available, the arena stops tracking the
+ * buffer and leaves it to the garbage collector.
+ */
+public class PixelArena implements AutoCloseable {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            System.err.println(e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Map<ByteBuffer, Integer> buffers = new IdentityHashMap<>();
+
+    private long liveBytes;
+    private long peakBytes;
+    private long totalBytes;
+
+    private static void clean(ByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    /**
+     * Allocates a direct buffer for the pixels of an image in a 32-bit
+     * format.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return a direct buffer in little-endian byte order with room for the
+     * pixels, so that its view as integers in the ARGB order stores bytes in
+     * the BGRA order
+     */
+    public synchronized ByteBuffer allocate(int width, int height) {
+        int size = Math.multiplyExact(Math.multiplyExact(width, height), Integer.BYTES);
+        var buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffers.put(buffer, size);
+        liveBytes += size;
+        totalBytes += size;
+        peakBytes = Math.max(peakBytes, liveBytes);
+        return buffer;
+    }
+
+    /**
+     * Frees the native memory of a buffer at once.
+     *
+     * @param buffer a buffer allocated by this arena and not yet freed
+     * @throws IllegalArgumentException if the buffer is not a live buffer of
+     * this arena
+     */
+    public synchronized void free(ByteBuffer buffer) {
+        Integer size = buffers.remove(buffer);
+        if (size == null) {
+            throw new IllegalArgumentException("Buffer not from this arena");
+        }
+        liveBytes -= size;
+        clean(buffer);
+    }
+
+    /**
+     * Gets the number of bytes allocated and not yet freed.
+     *
+     * @return the live bytes of the arena
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Gets the highest number of bytes that were live at one time.
+     *
+     * @return the peak bytes of the arena
+     */
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated since the arena was created,
+     * including those freed since.
+     *
+     * @return the total bytes allocated by the arena
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the number of buffers allocated and not yet freed.
+     *
+     * @return the live buffers of the arena
+     */
+    public synchronized int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * Summarizes the use of native memory on one line of text.
+     *
+     * @return the summary for printing
+     */
+    public synchronized String summary() {
+        double megabyte = 1024 * 1024;
+        return String.format("arena: %d buffers, live %.1f MiB, peak %.1f MiB, total %.1f MiB",
+                buffers.size(), liveBytes / megabyte, peakBytes / megabyte, totalBytes / megabyte);
+    }
+
+    /**
+     * Frees every buffer of the arena that is still live.
+     */
+    @Override
+    public synchronized void close() {
+        for (ByteBuffer buffer : buffers.keySet()) {
+            clean(buffer);
+        }
+        buffers.clear();
+        liveBytes = 0;
+    }
+}
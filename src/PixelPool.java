@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * A pool of images and pixel buffers, keyed by their width, height, and pixel
+ * format or image type. Each {@code get} method returns a free item of the
+ * requested kind, creating one only when all such items are in use, and
+ * {@link #release} makes the item free again. Once every kind of item needed
+ * has been created, getting and releasing items allocates nothing. The pool
+ * is a short list searched in order, since a program uses only a few kinds of
+ * item at a time. Its methods are synchronized, so that items can be taken on
+ * a worker thread and released on the JavaFX Application Thread. The direct
+ * buffers of the pool come from a {@link PixelArena}, and {@link #trim}
+ * frees the native memory of those released before a {@link #mark}.
+ */
+public class PixelPool {
+
+    private static class Slot {
+
+        private final int width;
+        private final int height;
+        private final Object format;
+        private final Object item;
+        private final WritableImage image;
+        private boolean free;
+        private long released;
+
+        Slot(int width, int height, Object format, Object item, WritableImage image) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.item = item;
+            this.image = image;
+        }
+    }
+
+    private final ArrayList<Slot> slots = new ArrayList<>();
+    private final PixelArena arena;
+
+    private long generation;
+
+    /**
+     * Creates a pool with its own arena for direct buffers.
+     */
+    public PixelPool() {
+        this(new PixelArena());
+    }
+
+    /**
+     * Creates a pool that allocates its direct buffers from an arena.
+     *
+     * @param arena the arena of the direct buffers
+     */
+    public PixelPool(PixelArena arena) {
+        this.arena = arena;
+    }
+
+    private Object take(int width, int height, Object format) {
+        for (Slot slot : slots) {
+            if (slot.free && slot.width == width && slot.height == height && slot.format.equals(format)) {
+                slot.free = false;
+                return slot.item;
+            }
+        }
+        return null;
+    }
+
+    private void add(int width, int height, Object format, Object item, WritableImage image) {
+        slots.add(new Slot(width, height, format, item, image));
+    }
+
+    /**
+     * Gets a JavaFX image to be written with its {@code PixelWriter}.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return an image of the given size with undefined contents
+     */
+    public synchronized WritableImage getImage(int width, int height) {
+        var image = (WritableImage) take(width, height, WritableImage.class);
+        if (image == null) {
+            image = new WritableImage(width, height);
+            add(width, height, WritableImage.class, image, image);
+        }
+        return image;
+    }
+
+    /**
+     * Gets a pixel buffer in the INT_ARGB_PRE format backed by an array.
+     *
+     * @param width the width of the buffer in pixels
+     * @param height the height of the buffer in pixels
+     * @return a pixel buffer of the given size with undefined contents
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized PixelBuffer<IntBuffer> getIntBuffer(int width, int height) {
+        var format = PixelFormat.getIntArgbPreInstance();
+        var pixelBuffer = (PixelBuffer<IntBuffer>) take(width, height, format);
+        if (pixelBuffer == null) {
+            pixelBuffer = new PixelBuffer<>(width, height, IntBuffer.allocate(width * height), format);
+            add(width, height, format, pixelBuffer, new WritableImage(pixelBuffer));
+        }
+        return pixelBuffer;
+    }
+
+    /**
+     * Gets a pixel buffer in the BYTE_BGRA_PRE format backed by a direct
+     * buffer in little-endian byte order.
+     *
+     * @param width the width of the buffer in pixels
+     * @param height the height of the buffer in pixels
+     * @return a pixel buffer of the given size with undefined contents
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized PixelBuffer<ByteBuffer> getByteBuffer(int width, int height) {
+        var format = PixelFormat.getByteBgraPreInstance();
+        var pixelBuffer = (PixelBuffer<ByteBuffer>) take(width, height, format);
+        if (pixelBuffer == null) {
+            var buffer = arena.allocate(width, height);
+            pixelBuffer = new PixelBuffer<>(width, height, buffer, format);
+            add(width, height, format, pixelBuffer, new WritableImage(pixelBuffer));
+        }
+        return pixelBuffer;
+    }
+
+    /**
+     * Gets the JavaFX image backed by a pixel buffer from this pool. The
+     * image is created once with its pixel buffer and is not a separate item.
+     *
+     * @param pixelBuffer a pixel buffer from this pool
+     * @return the image backed by the pixel buffer
+     */
+    public synchronized WritableImage getImage(PixelBuffer<?> pixelBuffer) {
+        for (Slot slot : slots) {
+            if (slot.item == pixelBuffer) {
+                return slot.image;
+            }
+        }
+        throw new IllegalArgumentException("Pixel buffer not from this pool");
+    }
+
+    /**
+     * Gets an AWT image and a JavaFX image that share the same pixels.
+     *
+     * @param width the width of the images in pixels
+     * @param height the height of the images in pixels
+     * @return a shared image of the given size with undefined contents
+     */
+    public synchronized SharedImage getSharedImage(int width, int height) {
+        var shared = (SharedImage) take(width, height, SharedImage.class);
+        if (shared == null) {
+            shared = new SharedImage(width, height);
+            add(width, height, SharedImage.class, shared, shared.getFxImage());
+        }
+        return shared;
+    }
+
+    /**
+     * Gets an AWT image of a predefined type.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param type the type of the image, such as TYPE_INT_ARGB
+     * @return an image of the given size and type with undefined contents
+     */
+    public synchronized BufferedImage getBufferedImage(int width, int height, int type) {
+        var image = (BufferedImage) take(width, height, type);
+        if (image == null) {
+            image = new BufferedImage(width, height, type);
+            add(width, height, type, image, null);
+        }
+        return image;
+    }
+
+    /**
+     * Returns an item to the pool so that it can be reused.
+     *
+     * @param item an item from this pool that is no longer in use
+     */
+    public synchronized void release(Object item) {
+        for (Slot slot : slots) {
+            if (slot.item == item) {
+                slot.free = true;
+                slot.released = generation;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Item not from this pool");
+    }
+
+    /**
+     * Marks the items released so far, so that a later call to {@link #trim}
+     * can tell them apart from the items released after.
+     *
+     * @return the mark, to be passed to {@link #trim}
+     */
+    public synchronized long mark() {
+        return generation++;
+    }
+
+    /**
+     * Removes the free items released before a mark from the pool and frees
+     * the native memory of their direct buffers. Take the mark when the
+     * images of those items were last replaced on screen, and call this
+     * method only on the second pulse after, once the renderer can no longer
+     * be drawing them. Items released after the mark are kept, since they
+     * may still be drawn.
+     *
+     * @param mark the value returned by {@link #mark}
+     * @return the number of items removed
+     */
+    public synchronized int trim(long mark) {
+        int count = 0;
+        for (var iterator = slots.iterator(); iterator.hasNext();) {
+            Slot slot = iterator.next();
+            if (slot.free && slot.released <= mark) {
+                iterator.remove();
+                if (slot.item instanceof PixelBuffer) {
+                    var buffer = ((PixelBuffer<?>) slot.item).getBuffer();
+                    if (buffer instanceof ByteBuffer) {
+                        arena.free((ByteBuffer) buffer);
+                    }
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the arena of the direct buffers of this pool.
+     *
+     * @return the arena
+     */
+    public PixelArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Gets the number of items kept by this pool.
+     *
+     * @return the number of items, both in use and free
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Converts pixels from the non-premultiplied ARGB format to the premultiplied
+ * ARGB format of the {@code PixelBuffer}, writing them directly into its
+ * buffer. For a {@code ByteBuffer} in the BYTE_BGRA_PRE format, pass a view of
+ * the buffer as integers in little-endian byte order.
+ * <p>
+ * Each color component is multiplied by alpha exactly as Java 2D does when it
+ * draws into an image of type TYPE_INT_ARGB_PRE, using the same integer
+ * approximation as its {@code mul8table}, so the results are bit-identical to
+ * those of {@code Graphics2D.drawImage}. The loops have no branches or table
+ * lookups so that the just-in-time compiler can vectorize them. Indexed-color
+ * images, such as the frames of a GIF file, are the exception: their color
+ * map is premultiplied once into a table of 256 entries, and each pixel is
+ * then a single lookup in the table.
+ */
+public final class Premultiplier {
+
+    private static final Map<IndexColorModel, int[]> PALETTES = new WeakHashMap<>();
+
+    private Premultiplier() {
+    }
+
+    /**
+     * Gets the premultiplied table of a color map, creating it the first time
+     * the color map is seen. Equal color maps share the same table, since
+     * each frame of a GIF file comes with its own copy of the color map.
+     *
+     * @param model the color model of an indexed-color image
+     * @return the colors of the map in the INT_ARGB_PRE format, with 256
+     * entries for all of the possible byte indices
+     */
+    static int[] palette(IndexColorModel model) {
+        synchronized (PALETTES) {
+            int[] table = PALETTES.get(model);
+            if (table == null) {
+                table = new int[256];
+                int size = Math.min(model.getMapSize(), table.length);
+                model.getRGBs(table);
+                premultiply(table, 0, table, 0, size);
+                PALETTES.put(model, table);
+            }
+            return table;
+        }
+    }
+
+    /**
+     * Premultiplies the color components of one pixel by its alpha.
+     *
+     * @param argb the pixel in the INT_ARGB format
+     * @return the pixel in the INT_ARGB_PRE format
+     */
+    public static int premultiply(int argb) {
+        int a = argb >>> 24;
+        int m = a * 0x10101;
+        int r = ((argb >> 16 & 0xff) * m + 0x800000) >>> 24;
+        int g = ((argb >> 8 & 0xff) * m + 0x800000) >>> 24;
+        int b = ((argb & 0xff) * m + 0x800000) >>> 24;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Premultiplies an array of pixels into a buffer.
+     *
+     * @param src the source pixels in the INT_ARGB format
+     * @param srcPos the index of the first source pixel
+     * @param dst the target buffer in the INT_ARGB_PRE format
+     * @param dstPos the absolute index in the buffer of the first target pixel
+     * @param length the number of pixels to convert
+     */
+    public static void premultiply(int[] src, int srcPos, IntBuffer dst, int dstPos, int length) {
+        if (dst.hasArray()) {
+            premultiply(src, srcPos, dst.array(), dst.arrayOffset() + dstPos, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst.put(dstPos + i, premultiply(src[srcPos + i]));
+            }
+        }
+    }
+
+    /**
+     * Premultiplies an array of pixels into another array, which may be the
+     * same array.
+     *
+     * @param src the source pixels in the INT_ARGB format
+     * @param srcPos the index of the first source pixel
+     * @param dst the target pixels in the INT_ARGB_PRE format
+     * @param dstPos the index of the first target pixel
+     * @param length the number of pixels to convert
+     */
+    public static void premultiply(int[] src, int srcPos, int[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            int argb = src[srcPos + i];
+            int a = argb >>> 24;
+            int m = a * 0x10101;
+            int r = ((argb >> 16 & 0xff) * m + 0x800000) >>> 24;
+            int g = ((argb >> 8 & 0xff) * m + 0x800000) >>> 24;
+            int b = ((argb & 0xff) * m + 0x800000) >>> 24;
+            dst[dstPos + i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * Converts an image into a buffer of premultiplied pixels.
+     *
+     * @param image the source image
+     * @param dst the target buffer in the INT_ARGB_PRE format, with room for
+     * all of the pixels in the image
+     */
+    public static void convert(BufferedImage image, IntBuffer dst) {
+        convert(image, 0, image.getHeight(), dst);
+    }
+
+    /**
+     * Converts a band of rows of an image into the same rows of a buffer of
+     * premultiplied pixels, using the kernel registered for the type of the
+     * image in the {@link ConverterRegistry}. Bands that do not overlap can
+     * be converted into the same buffer concurrently.
+     *
+     * @param image the source image
+     * @param minY the first row of the band
+     * @param maxY the row after the last row of the band
+     * @param dst the target buffer in the INT_ARGB_PRE format, with room for
+     * all of the pixels in the image
+     */
+    public static void convert(BufferedImage image, int minY, int maxY, IntBuffer dst) {
+        ConverterRegistry.get(image.getType()).convert(image, minY, maxY, dst);
+    }
+}
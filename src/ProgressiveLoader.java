@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Loads an image into a {@link PixelBuffer} progressively on a background
+ * thread. The loader first decodes a preview subsampled by
+ * {@link #SUBSAMPLING} in each direction and shows it enlarged, and then
+ * decodes the full image, publishing each band of rows as soon as the reader
+ * reports it through an {@link IIOReadUpdateListener}. The rows are
+ * premultiplied into the buffer on the JavaFX Application Thread within the
+ * call to {@code updateBuffer}, with a dirty region covering only the new
+ * band. Bands reported while a previous band is waiting to be published are
+ * merged into it.
+ */
+public class ProgressiveLoader implements IIOReadUpdateListener {
+
+    /**
+     * The subsampling factor of the preview in each direction.
+     */
+    public static final int SUBSAMPLING = 8;
+
+    private final Class<?> type;
+    private final String name;
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final IntBuffer buffer;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage image;
+
+    private BufferedImage source;
+    private int dirtyMinY;
+    private int dirtyMaxY;
+    private boolean pending;
+
+    /**
+     * Opens an image resource and reads its header.
+     *
+     * @param type the class used to find the resource
+     * @param name the name of the resource
+     * @throws IOException if an error occurs reading the resource
+     */
+    public ProgressiveLoader(Class<?> type, String name) throws IOException {
+        this.type = type;
+        this.name = name;
+        try (var input = type.getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            stream = ImageIO.createImageInputStream(new ByteArrayInputStream(input.readAllBytes()));
+        }
+        var readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            throw new IOException("Error reading image");
+        }
+        reader = readers.next();
+        reader.setInput(stream);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+        buffer = IntBuffer.allocate(width * height);
+        pixelBuffer = new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+        image = new WritableImage(pixelBuffer);
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the JavaFX image into which the image is loaded.
+     *
+     * @return the image backed by the pixel buffer of the loader
+     */
+    public WritableImage getImage() {
+        return image;
+    }
+
+    /**
+     * Starts loading the image on a background thread. When the image is
+     * complete, the callback receives the decoded image on the JavaFX
+     * Application Thread.
+     *
+     * @param done the callback to receive the decoded image
+     */
+    public void start(Consumer<BufferedImage> done) {
+        var thread = new Thread(() -> load(done), "ProgressiveLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load(Consumer<BufferedImage> done) {
+        try {
+            BufferedImage full;
+            var file = FrameFile.load(type, name);
+            if (file != null) {
+                try (file) {
+                    full = file.readImage(0);
+                }
+            } else {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(SUBSAMPLING, SUBSAMPLING, 0, 0);
+                BufferedImage preview = reader.read(0, param);
+                Platform.runLater(() -> showPreview(preview));
+                reader.addIIOReadUpdateListener(this);
+                full = reader.read(0);
+            }
+            Platform.runLater(() -> {
+                publish(full, 0, height);
+                done.accept(full);
+            });
+        } catch (IOException e) {
+            System.err.println(e);
+        } finally {
+            reader.dispose();
+            try {
+                stream.close();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
+    }
+
+    private void showPreview(BufferedImage preview) {
+        int previewWidth = preview.getWidth();
+        int previewHeight = preview.getHeight();
+        int[] row = new int[previewWidth];
+        pixelBuffer.updateBuffer((b) -> {
+            int[] pixels = buffer.array();
+            for (int py = 0; py < previewHeight; py++) {
+                preview.getRGB(0, py, previewWidth, 1, row, 0, previewWidth);
+                for (int px = 0; px < previewWidth; px++) {
+                    row[px] = Premultiplier.premultiply(row[px]);
+                }
+                int minY = py * SUBSAMPLING;
+                int maxY = Math.min(minY + SUBSAMPLING, height);
+                for (int y = minY; y < maxY; y++) {
+                    int offset = y * width;
+                    for (int px = 0; px < previewWidth; px++) {
+                        int minX = px * SUBSAMPLING;
+                        int maxX = Math.min(minX + SUBSAMPLING, width);
+                        Arrays.fill(pixels, offset + minX, offset + maxX, row[px]);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private void publish(BufferedImage decoded, int minY, int maxY) {
+        pixelBuffer.updateBuffer((b) -> {
+            Premultiplier.convert(decoded, minY, maxY, buffer);
+            return new Rectangle2D(0, minY, width, maxY - minY);
+        });
+    }
+
+    private void publishPending() {
+        BufferedImage decoded;
+        int minY;
+        int maxY;
+        synchronized (this) {
+            decoded = source;
+            minY = dirtyMinY;
+            maxY = dirtyMaxY;
+            pending = false;
+        }
+        publish(decoded, minY, maxY);
+    }
+
+    @Override
+    public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY,
+            int width, int height, int periodX, int periodY, int[] bands) {
+        int maxY = Math.min(minY + (height - 1) * periodY + 1, this.height);
+        synchronized (this) {
+            this.source = theImage;
+            if (pending) {
+                dirtyMinY = Math.min(dirtyMinY, minY);
+                dirtyMaxY = Math.max(dirtyMaxY, maxY);
+            } else {
+                dirtyMinY = minY;
+                dirtyMaxY = maxY;
+                pending = true;
+                Platform.runLater(this::publishPending);
+            }
+        }
+    }
+
+    @Override
+    public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass,
+            int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+    }
+
+    @Override
+    public void passComplete(ImageReader source, BufferedImage theImage) {
+    }
+
+    @Override
+    public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass,
+            int minPass, int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+    }
+
+    @Override
+    public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+            int width, int height, int periodX, int periodY, int[] bands) {
+    }
+
+    @Override
+    public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+    }
+}
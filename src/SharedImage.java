@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * An AWT image and a JavaFX image that share the same pixels. The
+ * {@code BufferedImage} of type TYPE_INT_ARGB_PRE uses as its data buffer the
+ * same integer array that backs the {@code IntBuffer} of the
+ * {@link PixelBuffer}, so Java 2D renders directly into the pixels on screen.
+ * Publishing a drawing requires only a call to
+ * {@code PixelBuffer.updateBuffer}, with no copy and no intermediate image.
+ */
+public class SharedImage {
+
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage fxImage;
+    private final BufferedImage awtImage;
+
+    /**
+     * Creates an AWT image that draws into the array of a heap buffer.
+     *
+     * @param buffer the buffer in the INT_ARGB_PRE format, which must be
+     * backed by an accessible array
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return an image of type TYPE_INT_ARGB_PRE sharing the array of the
+     * buffer
+     */
+    public static BufferedImage createBufferedImage(IntBuffer buffer, int width, int height) {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Buffer has no accessible array");
+        }
+        var dataBuffer = new DataBufferInt(buffer.array(), width * height, buffer.arrayOffset());
+        var colorModel = new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 32,
+                0x00ff0000, 0x0000ff00, 0x000000ff, 0xff000000, true, DataBuffer.TYPE_INT);
+        WritableRaster raster = Raster.createPackedRaster(dataBuffer, width, height, width,
+                colorModel.getMasks(), null);
+        return new BufferedImage(colorModel, raster, true, null);
+    }
+
+    /**
+     * Creates a shared image of the given size.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public SharedImage(int width, int height) {
+        var buffer = IntBuffer.allocate(width * height);
+        pixelBuffer = new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+        fxImage = new WritableImage(pixelBuffer);
+        awtImage = createBufferedImage(buffer, width, height);
+    }
+
+    /**
+     * Gets the pixel buffer whose array is shared with the AWT image.
+     *
+     * @return the pixel buffer
+     */
+    public PixelBuffer<IntBuffer> getPixelBuffer() {
+        return pixelBuffer;
+    }
+
+    /**
+     * Gets the JavaFX image backed by the pixel buffer.
+     *
+     * @return the JavaFX image
+     */
+    public WritableImage getFxImage() {
+        return fxImage;
+    }
+
+    /**
+     * Gets the AWT image that draws into the pixel buffer.
+     *
+     * @return the AWT image of type TYPE_INT_ARGB_PRE
+     */
+    public BufferedImage getAwtImage() {
+        return awtImage;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.util.Callback;
+
+/**
+ * Many small animations packed into the cells of one large
+ * {@link PixelBuffer}. Each {@link Sprite} owns a cell of the atlas and
+ * steps through the frames of its {@link Animation} at their own delays, and
+ * each {@code ImageView} shows a sprite through a viewport on the one image of
+ * the atlas. On each pulse, {@link #update} copies the next frame of every
+ * sprite that is due into its cell and publishes them all with a single call
+ * to {@code updateBuffer}, whose dirty region is the bounding box of the
+ * cells that changed. The cost of a pulse is then one upload to one texture,
+ * however many icons are on screen, and the views that show the same sprite
+ * share its cell and its upload.
+ * <p>
+ * Cells are packed in shelves from left to right and top to bottom. The
+ * atlas must fit within the maximum texture size of the graphics card,
+ * usually 4096 or 8192 pixels on each side.
+ */
+public class SpriteAtlas {
+
+    /**
+     * The frames of an animation, premultiplied and scaled to the size of
+     * its sprites, with the delay of each frame.
+     */
+    public static class Animation {
+
+        private final int width;
+        private final int height;
+        private final int[][] frames;
+        private final int[] delays;
+
+        private Animation(int width, int height, int[][] frames, int[] delays) {
+            this.width = width;
+            this.height = height;
+            this.frames = frames;
+            this.delays = delays;
+        }
+
+        /**
+         * Composes and scales the frames of a GIF file.
+         *
+         * @param decoder the decoder of the GIF file
+         * @param width the width of the sprites in pixels
+         * @param height the height of the sprites in pixels
+         * @return the animation
+         */
+        public static Animation of(GifDecoder decoder, int width, int height) {
+            int count = decoder.getFrameCount();
+            int[][] frames = new int[count][];
+            int[] delays = new int[count];
+            var canvas = IntBuffer.allocate(decoder.getWidth() * decoder.getHeight());
+            var source = SharedImage.createBufferedImage(canvas, decoder.getWidth(), decoder.getHeight());
+            var target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            int[] pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < count; i++) {
+                delays[i] = decoder.getDelay(decoder.getIndex());
+                decoder.next(canvas);
+                Graphics2D graphics = target.createGraphics();
+                graphics.setComposite(AlphaComposite.Src);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(source, 0, 0, width, height, null);
+                graphics.dispose();
+                frames[i] = pixels.clone();
+            }
+            return new Animation(width, height, frames, delays);
+        }
+
+        /**
+         * Gets the width of the frames.
+         *
+         * @return the width in pixels
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Gets the height of the frames.
+         *
+         * @return the height in pixels
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Gets the number of frames.
+         *
+         * @return the number of frames
+         */
+        public int getFrameCount() {
+            return frames.length;
+        }
+    }
+
+    /**
+     * An animation playing in a cell of the atlas.
+     */
+    public class Sprite {
+
+        private final Animation animation;
+        private final int x;
+        private final int y;
+        private final Rectangle2D viewport;
+        private final FramePacer pacer;
+
+        private int index;
+        private boolean due;
+
+        private Sprite(Animation animation, int x, int y, int index) {
+            this.animation = animation;
+            this.x = x;
+            this.y = y;
+            this.index = index;
+            viewport = new Rectangle2D(x, y, animation.width, animation.height);
+            pacer = new FramePacer();
+            due = true;
+        }
+
+        /**
+         * Gets the cell of the sprite in the atlas.
+         *
+         * @return the viewport of the sprite on the image of the atlas
+         */
+        public Rectangle2D getViewport() {
+            return viewport;
+        }
+
+        /**
+         * Creates a view of the sprite. Any number of views can show the
+         * same sprite.
+         *
+         * @return a new view of the image of the atlas with the viewport of
+         * the sprite
+         */
+        public ImageView createView() {
+            var view = new ImageView(image);
+            view.setViewport(viewport);
+            return view;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final IntBuffer buffer;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage image;
+    private final List<Sprite> sprites;
+    private final Callback<PixelBuffer<IntBuffer>, Rectangle2D> writer;
+
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Creates an empty atlas.
+     *
+     * @param width the width of the atlas in pixels
+     * @param height the height of the atlas in pixels
+     */
+    public SpriteAtlas(int width, int height) {
+        this.width = width;
+        this.height = height;
+        buffer = IntBuffer.allocate(width * height);
+        pixelBuffer = new PixelBuffer<>(width, height, buffer, PixelFormat.getIntArgbPreInstance());
+        image = new WritableImage(pixelBuffer);
+        sprites = new ArrayList<>();
+        writer = this::write;
+    }
+
+    /**
+     * Adds a sprite playing an animation, starting at one of its frames.
+     *
+     * @param animation the animation of the sprite
+     * @param index the index of the first frame to show
+     * @return the new sprite
+     * @throws IllegalStateException if the atlas has no room for the sprite
+     */
+    public Sprite add(Animation animation, int index) {
+        if (shelfX + animation.width > width) {
+            shelfX = 0;
+            shelfY += shelfHeight;
+            shelfHeight = 0;
+        }
+        if (animation.width > width || shelfY + animation.height > height) {
+            throw new IllegalStateException("No room in the atlas");
+        }
+        var sprite = new Sprite(animation, shelfX, shelfY, index % animation.frames.length);
+        shelfX += animation.width;
+        shelfHeight = Math.max(shelfHeight, animation.height);
+        sprites.add(sprite);
+        return sprite;
+    }
+
+    /**
+     * Gets the JavaFX image of the atlas.
+     *
+     * @return the image backed by the pixel buffer of the atlas
+     */
+    public WritableImage getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the number of sprites in the atlas.
+     *
+     * @return the number of sprites
+     */
+    public int getSpriteCount() {
+        return sprites.size();
+    }
+
+    /**
+     * Makes the first frame of every sprite due on the next pulse, as when
+     * the animations start or resume.
+     */
+    public void reset() {
+        for (Sprite sprite : sprites) {
+            sprite.pacer.reset();
+        }
+    }
+
+    /**
+     * Shows the next frame of each sprite that is due, with at most one call
+     * to {@code updateBuffer}. Call this method on each pulse.
+     *
+     * @param now the timestamp of the current pulse in nanoseconds
+     * @return the number of sprites that changed
+     */
+    public int update(long now) {
+        int count = 0;
+        minX = width;
+        minY = height;
+        maxX = 0;
+        maxY = 0;
+        for (Sprite sprite : sprites) {
+            sprite.due = sprite.pacer.isDue(now);
+            if (sprite.due) {
+                minX = Math.min(minX, sprite.x);
+                minY = Math.min(minY, sprite.y);
+                maxX = Math.max(maxX, sprite.x + sprite.animation.width);
+                maxY = Math.max(maxY, sprite.y + sprite.animation.height);
+                sprite.pacer.shown(now, sprite.animation.delays[sprite.index]);
+                count++;
+            }
+        }
+        if (count > 0) {
+            pixelBuffer.updateBuffer(writer);
+        }
+        return count;
+    }
+
+    private Rectangle2D write(PixelBuffer<IntBuffer> b) {
+        int[] pixels = buffer.array();
+        for (Sprite sprite : sprites) {
+            if (sprite.due) {
+                Animation animation = sprite.animation;
+                int[] frame = animation.frames[sprite.index];
+                for (int row = 0; row < animation.height; row++) {
+                    System.arraycopy(frame, row * animation.width,
+                            pixels, (sprite.y + row) * width + sprite.x, animation.width);
+                }
+                sprite.index = sprite.index == animation.frames.length - 1 ? 0 : sprite.index + 1;
+                sprite.due = false;
+            }
+        }
+        return new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+    }
+}
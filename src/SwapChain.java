@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * A chain of {@link PixelBuffer} objects and their corresponding
+ * {@link WritableImage} objects. The producer writes the next frame into the
+ * back buffer while the front buffer is on screen, and then calls
+ * {@link #swap} on the JavaFX Application Thread to publish the back buffer
+ * and obtain its image. Because the back buffer is never the image being
+ * displayed, the producer never writes to pixels that the QuantumRenderer
+ * thread may be reading.
+ *
+ * @param <T> the type of buffer, either {@code IntBuffer} or
+ * {@code ByteBuffer}
+ */
+public class SwapChain<T extends Buffer> {
+
+    private final int width;
+    private final int height;
+    private final List<PixelBuffer<T>> pixelBuffers;
+    private final List<WritableImage> images;
+
+    private int back;
+
+    /**
+     * Creates a swap chain of integer buffers in the INT_ARGB_PRE format.
+     *
+     * @param width the width of each buffer in pixels
+     * @param height the height of each buffer in pixels
+     * @param count the number of buffers, at least two
+     * @return the new swap chain
+     */
+    public static SwapChain<IntBuffer> ofInts(int width, int height, int count) {
+        return new SwapChain<>(width, height, count,
+                () -> IntBuffer.allocate(width * height),
+                PixelFormat.getIntArgbPreInstance());
+    }
+
+    /**
+     * Creates a swap chain of direct byte buffers in the BYTE_BGRA_PRE format.
+     * The buffers are set to the native byte order so that a view of each
+     * buffer as integers in the ARGB order stores the bytes in the BGRA order
+     * on little-endian platforms.
+     *
+     * @param width the width of each buffer in pixels
+     * @param height the height of each buffer in pixels
+     * @param count the number of buffers, at least two
+     * @return the new swap chain
+     */
+    public static SwapChain<ByteBuffer> ofBytes(int width, int height, int count) {
+        return new SwapChain<>(width, height, count,
+                () -> ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.nativeOrder()),
+                PixelFormat.getByteBgraPreInstance());
+    }
+
+    /**
+     * Creates a swap chain with buffers obtained from the allocator.
+     *
+     * @param width the width of each buffer in pixels
+     * @param height the height of each buffer in pixels
+     * @param count the number of buffers, at least two
+     * @param allocator the supplier of a new buffer for each pixel buffer
+     * @param format the pixel format of the buffers
+     */
+    public SwapChain(int width, int height, int count, Supplier<T> allocator, PixelFormat<T> format) {
+        if (count < 2) {
+            throw new IllegalArgumentException("Swap chain needs at least two buffers");
+        }
+        this.width = width;
+        this.height = height;
+        pixelBuffers = new ArrayList<>(count);
+        images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            var pixelBuffer = new PixelBuffer<>(width, height, allocator.get(), format);
+            pixelBuffers.add(pixelBuffer);
+            images.add(new WritableImage(pixelBuffer));
+        }
+    }
+
+    /**
+     * Gets the back buffer for the producer to fill with the next frame.
+     *
+     * @return the buffer that is not on screen
+     */
+    public T getBuffer() {
+        return pixelBuffers.get(back).getBuffer();
+    }
+
+    /**
+     * Gets the pixel buffer that wraps the back buffer.
+     *
+     * @return the pixel buffer that is not on screen
+     */
+    public PixelBuffer<T> getPixelBuffer() {
+        return pixelBuffers.get(back);
+    }
+
+    /**
+     * Publishes the entire back buffer and advances the chain. Must be called
+     * on the JavaFX Application Thread.
+     *
+     * @return the image of the buffer just published, to be set on the view
+     */
+    public WritableImage swap() {
+        return swap(new Rectangle2D(0, 0, width, height));
+    }
+
+    /**
+     * Publishes the region of the back buffer that changed and advances the
+     * chain. Must be called on the JavaFX Application Thread.
+     *
+     * @param dirty the region of the back buffer that changed
+     * @return the image of the buffer just published, to be set on the view
+     */
+    public WritableImage swap(Rectangle2D dirty) {
+        pixelBuffers.get(back).updateBuffer((b) -> dirty);
+        WritableImage image = images.get(back);
+        back = back == pixelBuffers.size() - 1 ? 0 : back + 1;
+        return image;
+    }
+}
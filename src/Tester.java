@@ -15,13 +15,9 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
-import java.awt.image.DataBufferInt;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.List;
@@ -78,8 +74,6 @@ public class Tester extends Application {
 
     private final WritableImage jfxImage;
 
-    private final int[] rgbArray;
-
     private final ByteBuffer byteBuffer;
     private final PixelBuffer<ByteBuffer> bytePixelBuffer;
     private final WritableImage nioByteImage;
@@ -88,11 +82,18 @@ public class Tester extends Application {
     private final PixelBuffer<IntBuffer> intPixelBuffer;
     private final WritableImage nioIntImage;
 
+    private final Conversions conversions;
     private final List<Callable<Image>> methods;
 
     private int index;
 
     private static BufferedImage loadImage(String filename) throws IOException {
+        var file = FrameFile.load(Animator.class, filename);
+        if (file != null) {
+            try (file) {
+                return file.readImage(0);
+            }
+        }
         try (var input = Animator.class.getResourceAsStream(filename)) {
             return ImageIO.read(input);
         }
@@ -141,8 +142,6 @@ public class Tester extends Application {
 
         jfxImage = new WritableImage(width, height);
 
-        rgbArray = new int[width * height];
-
         intBuffer = IntBuffer.allocate(width * height);
         intPixelBuffer = new PixelBuffer<>(width, height, intBuffer, PixelFormat.getIntArgbPreInstance());
         nioIntImage = new WritableImage(intPixelBuffer);
@@ -151,6 +150,8 @@ public class Tester extends Application {
         bytePixelBuffer = new PixelBuffer<>(width, height, byteBuffer, PixelFormat.getByteBgraPreInstance());
         nioByteImage = new WritableImage(bytePixelBuffer);
 
+        conversions = new Conversions(pngImage, intBuffer, byteBuffer);
+
         methods = Arrays.asList(
                 this::drawArgbSetArgb,
                 this::drawArgbSetArgbPre,
@@ -165,7 +166,21 @@ public class Tester extends Application {
                 this::drawArgbPrePutBytes,
                 this::copyArgbPutBytes,
                 this::drawArgbPrePutInts,
-                this::copyArgbPutInts
+                this::copyArgbPutInts,
+                this::convertAbgrPutBytes,
+                this::convertAbgrPutInts,
+                () -> convertPutBytes(BufferedImage.TYPE_INT_RGB),
+                () -> convertPutInts(BufferedImage.TYPE_INT_RGB),
+                () -> convertPutBytes(BufferedImage.TYPE_INT_BGR),
+                () -> convertPutInts(BufferedImage.TYPE_INT_BGR),
+                () -> convertPutBytes(BufferedImage.TYPE_3BYTE_BGR),
+                () -> convertPutInts(BufferedImage.TYPE_3BYTE_BGR),
+                () -> convertPutBytes(BufferedImage.TYPE_4BYTE_ABGR_PRE),
+                () -> convertPutInts(BufferedImage.TYPE_4BYTE_ABGR_PRE),
+                () -> convertPutBytes(BufferedImage.TYPE_INT_ARGB),
+                () -> convertPutInts(BufferedImage.TYPE_INT_ARGB),
+                () -> convertPutBytes(BufferedImage.TYPE_INT_ARGB_PRE),
+                () -> convertPutInts(BufferedImage.TYPE_INT_ARGB_PRE)
         );
     }
 
@@ -183,63 +198,31 @@ public class Tester extends Application {
         log(image.getType(), format, comment);
     }
 
-    private Image oldDrawInt(BufferedImage awtImage, PixelFormat<IntBuffer> format) {
-        Graphics2D graphics = awtImage.createGraphics();
-        graphics.drawImage(pngImage, 0, 0, null);
-        graphics.dispose();
-        int[] data = ((DataBufferInt) awtImage.getRaster().getDataBuffer()).getData();
+    private Image oldDrawInt(int type, PixelFormat<IntBuffer> format) {
+        int[] data = conversions.drawInt(type);
         jfxImage.getPixelWriter().setPixels(0, 0, width, height, format, data, 0, width);
         return jfxImage;
     }
 
-    private Image oldDrawByte(BufferedImage awtImage, PixelFormat<ByteBuffer> format) {
-        Graphics2D graphics = awtImage.createGraphics();
-        graphics.drawImage(pngImage, 0, 0, null);
-        graphics.dispose();
-        byte[] data = ((DataBufferByte) awtImage.getRaster().getDataBuffer()).getData();
+    private Image oldDrawByte(int type, PixelFormat<ByteBuffer> format) {
+        byte[] data = conversions.drawByte(type);
         jfxImage.getPixelWriter().setPixels(0, 0, width, height, format, data, 0, width * Integer.BYTES);
         return jfxImage;
     }
 
     private Image oldCopyInt(PixelFormat<IntBuffer> format) {
-        pngImage.getRGB(0, 0, width, height, rgbArray, 0, width);
-        jfxImage.getPixelWriter().setPixels(0, 0, width, height, format, rgbArray, 0, width);
+        int[] data = conversions.copyInt();
+        jfxImage.getPixelWriter().setPixels(0, 0, width, height, format, data, 0, width);
         return jfxImage;
     }
 
-    private Image nioDrawInt(BufferedImage awtImage) {
-        Graphics2D graphics = awtImage.createGraphics();
-        graphics.drawImage(pngImage, 0, 0, null);
-        graphics.dispose();
-        int[] data = ((DataBufferInt) awtImage.getRaster().getDataBuffer()).getData();
-        intBuffer.put(data);
-        intBuffer.clear();
-        intPixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
-        return nioIntImage;
-    }
-
-    private Image nioDrawByte(BufferedImage awtImage) {
-        Graphics2D graphics = awtImage.createGraphics();
-        graphics.drawImage(pngImage, 0, 0, null);
-        graphics.dispose();
-        int[] data = ((DataBufferInt) awtImage.getRaster().getDataBuffer()).getData();
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(data);
-        bytePixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
-        return nioByteImage;
-    }
-
-    private Image nioCopyInt() {
-        pngImage.getRGB(0, 0, width, height, rgbArray, 0, width);
-        intBuffer.put(rgbArray);
-        intBuffer.clear();
-        intPixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
+    private Image nioInt(Rectangle2D dirty) {
+        intPixelBuffer.updateBuffer((b) -> dirty);
         return nioIntImage;
     }
 
-    private Image nioCopyByte() {
-        pngImage.getRGB(0, 0, width, height, rgbArray, 0, width);
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(rgbArray);
-        bytePixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
+    private Image nioByte(Rectangle2D dirty) {
+        bytePixelBuffer.updateBuffer((b) -> dirty);
         return nioByteImage;
     }
 
@@ -247,80 +230,80 @@ public class Tester extends Application {
      * 01 - INT_ARGB -> INT_ARGB (correct)
      */
     private Image drawArgbSetArgb() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int type = BufferedImage.TYPE_INT_ARGB;
         var format = PixelFormat.getIntArgbInstance();
-        log(awtImage, format, MSG_OK);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_OK);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 02 - INT_ARGB -> INT_ARGB_PRE (wrong alpha)
      */
     private Image drawArgbSetArgbPre() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int type = BufferedImage.TYPE_INT_ARGB;
         var format = PixelFormat.getIntArgbPreInstance();
-        log(awtImage, format, MSG_ALPHA);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_ALPHA);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 03 - INT_ARGB_PRE -> INT_ARGB (wrong alpha)
      */
     private Image drawArgbPreSetArgb() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int type = BufferedImage.TYPE_INT_ARGB_PRE;
         var format = PixelFormat.getIntArgbInstance();
-        log(awtImage, format, MSG_ALPHA);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_ALPHA);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 04 - INT_ARGB_PRE -> INT_ARGB_PRE (correct)
      */
     private Image drawArgbPreSetArgbPre() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int type = BufferedImage.TYPE_INT_ARGB_PRE;
         var format = PixelFormat.getIntArgbPreInstance();
-        log(awtImage, format, MSG_OK);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_OK);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 05 - INT_RGB -> INT_ARGB (blank)
      */
     private Image drawRgbSetArgb() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int type = BufferedImage.TYPE_INT_RGB;
         var format = PixelFormat.getIntArgbInstance();
-        log(awtImage, format, MSG_BLANK);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_BLANK);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 06 - INT_BGR -> INT_ARGB (blank)
      */
     private Image drawBgrSetArgb() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_BGR);
+        int type = BufferedImage.TYPE_INT_BGR;
         var format = PixelFormat.getIntArgbInstance();
-        log(awtImage, format, MSG_BLANK);
-        return oldDrawInt(awtImage, format);
+        log(type, format, MSG_BLANK);
+        return oldDrawInt(type, format);
     }
 
     /*
      * 07 - 4BYTE_ABGR -> BYTE_BGRA (wrong colors)
      */
     private Image drawAbgrSetBgra() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        int type = BufferedImage.TYPE_4BYTE_ABGR;
         var format = PixelFormat.getByteBgraInstance();
-        log(awtImage, format, MSG_COLORS);
-        return oldDrawByte(awtImage, format);
+        log(type, format, MSG_COLORS);
+        return oldDrawByte(type, format);
     }
 
     /*
      * 08 - 4BYTE_ABGR_PRE -> BYTE_BGRA_PRE (wrong colors)
      */
     private Image drawAbgrPreSetBgraPre() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR_PRE);
+        int type = BufferedImage.TYPE_4BYTE_ABGR_PRE;
         var format = PixelFormat.getByteBgraPreInstance();
-        log(awtImage, format, MSG_COLORS);
-        return oldDrawByte(awtImage, format);
+        log(type, format, MSG_COLORS);
+        return oldDrawByte(type, format);
     }
 
     /*
@@ -347,10 +330,10 @@ public class Tester extends Application {
      * 11 - INT_ARGB_PRE -> BYTE_BGRA_PRE (correct)
      */
     private Image drawArgbPrePutBytes() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int type = BufferedImage.TYPE_INT_ARGB_PRE;
         var format = bytePixelBuffer.getPixelFormat();
-        log(awtImage, format, MSG_OK);
-        return nioDrawByte(awtImage);
+        log(type, format, MSG_OK);
+        return nioByte(conversions.drawPutBytes());
     }
 
     /*
@@ -360,17 +343,17 @@ public class Tester extends Application {
         int type = BufferedImage.TYPE_INT_ARGB;
         var format = bytePixelBuffer.getPixelFormat();
         log(type, format, MSG_ALPHA);
-        return nioCopyByte();
+        return nioByte(conversions.copyPutBytes());
     }
 
     /*
-     * 13 - INT_ARGB_PRE -> INT_ARGB_PRE (correct)
+     * 13 - INT_ARGB_PRE -> INT_ARGB_PRE (correct, drawn into the pixel buffer)
      */
     private Image drawArgbPrePutInts() {
-        var awtImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        int type = BufferedImage.TYPE_INT_ARGB_PRE;
         var format = intPixelBuffer.getPixelFormat();
-        log(awtImage, format, MSG_OK);
-        return nioDrawInt(awtImage);
+        log(type, format, MSG_OK);
+        return nioInt(conversions.drawPutInts());
     }
 
     /*
@@ -380,7 +363,43 @@ public class Tester extends Application {
         int type = BufferedImage.TYPE_INT_ARGB;
         var format = intPixelBuffer.getPixelFormat();
         log(type, format, MSG_ALPHA);
-        return nioCopyInt();
+        return nioInt(conversions.copyPutInts());
+    }
+
+    /*
+     * 15 - 4BYTE_ABGR -> BYTE_BGRA_PRE (correct)
+     */
+    private Image convertAbgrPutBytes() {
+        var format = bytePixelBuffer.getPixelFormat();
+        log(pngImage, format, MSG_OK);
+        return nioByte(conversions.convertPutBytes());
+    }
+
+    /*
+     * 16 - 4BYTE_ABGR -> INT_ARGB_PRE (correct)
+     */
+    private Image convertAbgrPutInts() {
+        var format = intPixelBuffer.getPixelFormat();
+        log(pngImage, format, MSG_OK);
+        return nioInt(conversions.convertPutInts());
+    }
+
+    /*
+     * 17 to 28 - INT_RGB, INT_BGR, 3BYTE_BGR, 4BYTE_ABGR_PRE, INT_ARGB, and
+     * INT_ARGB_PRE -> BYTE_BGRA_PRE and INT_ARGB_PRE (correct, converted by
+     * the kernel of the source type, with black where the types without alpha
+     * have no transparency)
+     */
+    private Image convertPutBytes(int type) {
+        var format = bytePixelBuffer.getPixelFormat();
+        log(type, format, MSG_OK);
+        return nioByte(conversions.convertPutBytes(type));
+    }
+
+    private Image convertPutInts(int type) {
+        var format = intPixelBuffer.getPixelFormat();
+        log(type, format, MSG_OK);
+        return nioInt(conversions.convertPutInts(type));
     }
 
     private void onKeyPressed(KeyEvent event) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A JavaFX application to view an image of any size through a
+ * {@link TiledImage}. Run with a command like the following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java \
+ *     --add-modules=javafx.graphics \
+ *     --module-path=$HOME/lib/javafx-sdk-15/lib \
+ *     -Dtileviewer.image=huge.png -cp dist/pixel-buffer.jar TileViewer
+ * }</pre>
+ * The system property {@code tileviewer.image} names either an image file or
+ * a bundled image. Drag the image or press the arrow keys to scroll it.
+ */
+public class TileViewer extends Application {
+
+    private static final String TITLE = "TileViewer";
+    private static final String IMAGE = System.getProperty("tileviewer.image", "Renoir_by_Bazille.jpg");
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int STEP = 64;
+    private static final Color BACKGROUND = Color.grayRgb(224);
+
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final TiledImage image;
+
+    private double dragX;
+    private double dragY;
+
+    private static ImageInputStream openImage(String name) throws IOException {
+        var file = new File(name);
+        if (file.isFile()) {
+            return ImageIO.createImageInputStream(file);
+        }
+        try (var input = TileViewer.class.getResourceAsStream(name)) {
+            if (input == null) {
+                throw new IOException("Error loading image");
+            }
+            return ImageIO.createImageInputStream(new ByteArrayInputStream(input.readAllBytes()));
+        }
+    }
+
+    public TileViewer() throws IOException {
+        stream = openImage(IMAGE);
+        var readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            throw new IOException("Error reading image");
+        }
+        reader = readers.next();
+        reader.setInput(stream);
+        image = new TiledImage(reader);
+    }
+
+    private void onKeyPressed(KeyEvent event) {
+        KeyCode code = event.getCode();
+        if (code == KeyCode.LEFT) {
+            event.consume();
+            image.scrollBy(-STEP, 0);
+        } else if (code == KeyCode.RIGHT) {
+            event.consume();
+            image.scrollBy(STEP, 0);
+        } else if (code == KeyCode.UP) {
+            event.consume();
+            image.scrollBy(0, -STEP);
+        } else if (code == KeyCode.DOWN) {
+            event.consume();
+            image.scrollBy(0, STEP);
+        } else if (code == KeyCode.Q || code == KeyCode.ESCAPE) {
+            event.consume();
+            Platform.exit();
+        }
+    }
+
+    private void onMousePressed(MouseEvent event) {
+        dragX = event.getX();
+        dragY = event.getY();
+    }
+
+    private void onMouseDragged(MouseEvent event) {
+        image.scrollBy(dragX - event.getX(), dragY - event.getY());
+        dragX = event.getX();
+        dragY = event.getY();
+    }
+
+    @Override
+    public void start(Stage stage) {
+        Scene scene = new Scene(image, WIDTH, HEIGHT, BACKGROUND);
+        scene.addEventHandler(KeyEvent.KEY_PRESSED, this::onKeyPressed);
+        scene.addEventHandler(MouseEvent.MOUSE_PRESSED, this::onMousePressed);
+        scene.addEventHandler(MouseEvent.MOUSE_DRAGGED, this::onMouseDragged);
+        stage.setTitle(TITLE + " - " + image.getImageWidth() + " x " + image.getImageHeight());
+        stage.setScene(scene);
+        stage.show();
+    }
+
+    @Override
+    public void stop() throws IOException, InterruptedException {
+        image.dispose();
+        reader.dispose();
+        stream.close();
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+
+/**
+ * An image too large for a single texture, shown as a grid of square tiles.
+ * Each tile is a {@link PixelBuffer} of at most {@link #TILE_SIZE} pixels on a
+ * side, shown by its own {@link ImageView}. Only the tiles that intersect the
+ * visible part of the pane exist at any time: when the image is scrolled, the
+ * tiles that come into view are decoded on a background thread from their
+ * region of the source with {@link ImageReadParam#setSourceRegion} and
+ * converted into a free buffer of a {@link PixelPool}, then uploaded on the
+ * JavaFX Application Thread. The tiles that leave the view return their
+ * buffers to the pool on the second pulse after, once the renderer can no
+ * longer be drawing them. The memory used is bounded by the size of the pane
+ * rather than the size of the image.
+ */
+public class TiledImage extends Pane {
+
+    /**
+     * The width and height of a full tile in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    private static class Tile {
+
+        private final ImageView view;
+        private PixelBuffer<IntBuffer> pixelBuffer;
+        private Future<?> task;
+
+        Tile(ImageView view) {
+            this.view = view;
+        }
+    }
+
+    private final ImageReader reader;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final PixelPool pool;
+    private final Map<Long, Tile> tiles;
+    private final Rectangle clip;
+    private final ExecutorService worker;
+    private final AnimationTimer releaser;
+
+    private ArrayList<PixelBuffer<IntBuffer>> retiring;
+    private ArrayList<PixelBuffer<IntBuffer>> retired;
+    private double scrollX;
+    private double scrollY;
+
+    /**
+     * Creates a tiled image from the first image of a reader. The reader must
+     * allow seeking backwards, so that tiles can be decoded in any order, and
+     * must not be used elsewhere until {@link #dispose} is called.
+     *
+     * @param reader the image reader, with its input already set
+     * @throws IOException if an error occurs reading the image header
+     */
+    public TiledImage(ImageReader reader) throws IOException {
+        this.reader = reader;
+        imageWidth = reader.getWidth(0);
+        imageHeight = reader.getHeight(0);
+        pool = new PixelPool();
+        tiles = new HashMap<>();
+        clip = new Rectangle();
+        setClip(clip);
+        worker = Executors.newSingleThreadExecutor((runnable) -> {
+            var thread = new Thread(runnable, "TiledImage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retiring = new ArrayList<>();
+        retired = new ArrayList<>();
+        releaser = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                release();
+            }
+        };
+    }
+
+    private static long key(int column, int row) {
+        return (long) row << 32 | column;
+    }
+
+    /**
+     * Gets the width of the whole image.
+     *
+     * @return the width in pixels
+     */
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Gets the height of the whole image.
+     *
+     * @return the height in pixels
+     */
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Gets the number of tiles in memory.
+     *
+     * @return the number of tiles that intersect the view
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Scrolls the image so that the given point is at the top left corner of
+     * the pane, keeping the image within the pane where possible.
+     *
+     * @param x the horizontal position in the image, in pixels
+     * @param y the vertical position in the image, in pixels
+     */
+    public void scrollTo(double x, double y) {
+        scrollX = Math.max(0, Math.min(x, imageWidth - getWidth()));
+        scrollY = Math.max(0, Math.min(y, imageHeight - getHeight()));
+        requestLayout();
+    }
+
+    /**
+     * Scrolls the image by the given distance.
+     *
+     * @param dx the horizontal distance in pixels
+     * @param dy the vertical distance in pixels
+     */
+    public void scrollBy(double dx, double dy) {
+        scrollTo(scrollX + dx, scrollY + dy);
+    }
+
+    /**
+     * Stops decoding tiles and waits for the tile being decoded, if any, so
+     * that the reader can be disposed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void dispose() throws InterruptedException {
+        releaser.stop();
+        worker.shutdownNow();
+        worker.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns to the pool the buffers retired one pulse earlier, so that each
+     * buffer is reused only on the second pulse after its tile was removed.
+     */
+    private void release() {
+        for (var pixelBuffer : retired) {
+            pool.release(pixelBuffer);
+        }
+        retired.clear();
+        var list = retired;
+        retired = retiring;
+        retiring = list;
+        if (retired.isEmpty()) {
+            releaser.stop();
+        }
+    }
+
+    private void retire(PixelBuffer<IntBuffer> pixelBuffer) {
+        retiring.add(pixelBuffer);
+        releaser.start();
+    }
+
+    private void decode(Tile tile, int column, int row) {
+        int x = column * TILE_SIZE;
+        int y = row * TILE_SIZE;
+        int width = Math.min(TILE_SIZE, imageWidth - x);
+        int height = Math.min(TILE_SIZE, imageHeight - y);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new java.awt.Rectangle(x, y, width, height));
+        try {
+            BufferedImage region = reader.read(0, param);
+            var pixelBuffer = pool.getIntBuffer(width, height);
+            Premultiplier.convert(region, pixelBuffer.getBuffer().clear());
+            Platform.runLater(() -> show(tile, column, row, pixelBuffer));
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    private void show(Tile tile, int column, int row, PixelBuffer<IntBuffer> pixelBuffer) {
+        if (tiles.get(key(column, row)) == tile) {
+            tile.pixelBuffer = pixelBuffer;
+            pixelBuffer.updateBuffer((b) -> null);
+            tile.view.setImage(pool.getImage(pixelBuffer));
+        } else {
+            pool.release(pixelBuffer);
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = getWidth();
+        double height = getHeight();
+        clip.setWidth(width);
+        clip.setHeight(height);
+        scrollX = Math.max(0, Math.min(scrollX, imageWidth - width));
+        scrollY = Math.max(0, Math.min(scrollY, imageHeight - height));
+        int minColumn = (int) (scrollX / TILE_SIZE);
+        int minRow = (int) (scrollY / TILE_SIZE);
+        int maxColumn = (int) Math.min(Math.ceil((scrollX + width) / TILE_SIZE), Math.ceil((double) imageWidth / TILE_SIZE));
+        int maxRow = (int) Math.min(Math.ceil((scrollY + height) / TILE_SIZE), Math.ceil((double) imageHeight / TILE_SIZE));
+
+        Iterator<Map.Entry<Long, Tile>> iterator = tiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            long key = entry.getKey();
+            int column = (int) key;
+            int row = (int) (key >>> 32);
+            if (column < minColumn || column >= maxColumn || row < minRow || row >= maxRow) {
+                Tile tile = entry.getValue();
+                tile.task.cancel(false);
+                getChildren().remove(tile.view);
+                tile.view.setImage(null);
+                if (tile.pixelBuffer != null) {
+                    retire(tile.pixelBuffer);
+                }
+                iterator.remove();
+            }
+        }
+        for (int row = minRow; row < maxRow; row++) {
+            for (int column = minColumn; column < maxColumn; column++) {
+                Tile tile = tiles.get(key(column, row));
+                if (tile == null) {
+                    tile = new Tile(new ImageView());
+                    Tile added = tile;
+                    int c = column;
+                    int r = row;
+                    tile.task = worker.submit(() -> decode(added, c, r));
+                    tiles.put(key(column, row), tile);
+                    getChildren().add(tile.view);
+                }
+                tile.view.relocate(column * TILE_SIZE - Math.round(scrollX), row * TILE_SIZE - Math.round(scrollY));
+            }
+        }
+    }
+}
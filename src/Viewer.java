@@ -15,18 +15,22 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.awt.AlphaComposite;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.PixelBuffer;
@@ -58,20 +62,62 @@ import javax.imageio.ImageIO;
 public class Viewer extends Application {
 
     private static final String TITLE = "Viewer";
-    private static final String IMAGE = "PNG_transparency_demonstration_1.png";
+    private static final String IMAGE = System.getProperty("viewer.image", "PNG_transparency_demonstration_1.png");
     private static final int WIDTH = 800;
     private static final int HEIGHT = 600;
     private static final Color BACKGROUND = Color.grayRgb(224);
 
-    private final BufferedImage awtSolid;
-    private final BufferedImage awtImage;
+    private static final int SOLID = java.awt.Color.DARK_GRAY.getRGB();
+    private static final double ZOOM = Math.sqrt(2);
+
+    /**
+     * The result of a conversion method, prepared on the worker thread and
+     * published on the JavaFX Application Thread.
+     */
+    private static class Frame {
+
+        private final WritableImage image;
+        private final Object item;
+        private final Object scratch;
+        private final Runnable upload;
+
+        /**
+         * Creates the result of a conversion method.
+         *
+         * @param image the image to show
+         * @param item the pooled item behind the image
+         * @param scratch a pooled intermediate item to release after the
+         * upload, or {@code null}
+         * @param upload the call to {@code updateBuffer} or
+         * {@code setPixels} that uploads the pixels of the image
+         */
+        Frame(WritableImage image, Object item, Object scratch, Runnable upload) {
+            this.image = image;
+            this.item = item;
+            this.scratch = scratch;
+            this.upload = upload;
+        }
+    }
+
+    private final ProgressiveLoader loader;
     private final int width;
     private final int height;
     private final ImageView view;
     private final StackPane root;
-    private final List<Runnable> methods;
+    private final List<Callable<Frame>> methods;
+    private final PixelArena arena;
+    private final PixelPool pool;
+    private final ExecutorService worker;
+    private final AnimationTimer releaser;
 
+    private ArrayList<Object> retiring;
+    private ArrayList<Object> retired;
+    private BufferedImage awtImage;
     private int index;
+    private Object shown;
+    private double scale = 1;
+    private long requests;
+    private Future<?> pending;
 
     private static void saveImage(String name, IntBuffer buffer, int width, int height) throws IOException {
         IntBuffer src = buffer.duplicate().clear();
@@ -84,29 +130,27 @@ public class Viewer extends Application {
         ImageIO.write(image, "png", new File(name));
     }
 
-    private static BufferedImage solidImage(int width, int height) {
-        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                image.setRGB(x, y, java.awt.Color.DARK_GRAY.getRGB());
-            }
-        }
-        return image;
-    }
-
-    private static BufferedImage loadImage(String filename) throws IOException {
-        try (var input = Animator.class.getResourceAsStream(filename)) {
-            return ImageIO.read(input);
-        }
-    }
-
     public Viewer() throws IOException {
-        awtImage = loadImage(IMAGE);
-        width = awtImage.getWidth();
-        height = awtImage.getHeight();
-        awtSolid = solidImage(width, height);
+        loader = new ProgressiveLoader(Animator.class, IMAGE);
+        width = loader.getWidth();
+        height = loader.getHeight();
+        arena = new PixelArena();
+        pool = new PixelPool(arena);
         view = new ImageView();
         root = new StackPane(view);
+        worker = Executors.newSingleThreadExecutor((runnable) -> {
+            var thread = new Thread(runnable, "Viewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retiring = new ArrayList<>();
+        retired = new ArrayList<>();
+        releaser = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                release();
+            }
+        };
 
         methods = Arrays.asList(
                 this::clear,
@@ -118,128 +162,298 @@ public class Viewer extends Application {
                 this::clear,
                 this::newCopy,
                 this::clear,
+                this::zeroDraw,
+                this::clear,
                 this::oneCopy
         );
     }
 
     /**
-     * Clears the view with a solid dark gray image.
+     * Returns to the pool the items retired one pulse earlier, so that each
+     * item is reused only on the second pulse after its image left the
+     * screen, when the renderer can no longer be drawing it.
      */
-    private void clear() {
-        var array = new int[width * height];
-        var image = new WritableImage(width, height);
-        // Returns the pixels in the default RGB color model (TYPE_INT_ARGB).
-        awtSolid.getRGB(0, 0, width, height, array, 0, width);
-        image.getPixelWriter().setPixels(0, 0, width, height,
-                PixelFormat.getIntArgbInstance(), array, 0, width);
+    private void release() {
+        for (Object item : retired) {
+            pool.release(item);
+        }
+        retired.clear();
+        var list = retired;
+        retired = retiring;
+        retiring = list;
+        if (retired.isEmpty()) {
+            releaser.stop();
+        }
+    }
+
+    /**
+     * Shows an image in the view and retires the pooled item behind the image
+     * previously shown, returning it to the pool on the second pulse after.
+     *
+     * @param image the image to show
+     * @param item the item from the pool that holds the pixels of the image
+     */
+    private void show(WritableImage image, Object item) {
         view.setImage(image);
+        if (shown != null) {
+            retiring.add(shown);
+            releaser.start();
+        }
+        shown = item;
     }
 
     /**
-     * Converts the image like {@code javafx.embed.swing.SwingFXUtils} using an
-     * intermediate {@code BufferedImage} of type TYPE_INT_ARGB_PRE.
+     * Publishes the result of a method on the JavaFX Application Thread,
+     * unless another method or zoom was requested after it, in which case
+     * its pooled items are released without being shown.
+     *
+     * @param result the result of the method
+     * @param request the number of the request that produced the result
      */
-    private void oldDraw() {
-        System.out.println("oldDraw: Draws to intermediate AWT image; writes to JavaFX image.");
-        var copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    private void publish(Frame result, long request) {
+        if (request == requests) {
+            result.upload.run();
+            show(result.image, result.item);
+        } else if (result.item != null) {
+            pool.release(result.item);
+        }
+        if (result.scratch != null) {
+            pool.release(result.scratch);
+        }
+    }
+
+    /**
+     * Draws the image into an intermediate {@code BufferedImage} of type
+     * TYPE_INT_ARGB_PRE from the pool, cleared first as if it were new.
+     *
+     * @return the intermediate image, to be released when no longer needed
+     */
+    private BufferedImage drawCopy() {
+        var copy = pool.getBufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
         var graphics = copy.createGraphics();
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.SrcOver);
         graphics.drawImage(awtImage, 0, 0, null);
         graphics.dispose();
-        var image = new WritableImage(width, height);
+        return copy;
+    }
+
+    /**
+     * Clears the view with a solid dark gray image.
+     *
+     * @return the pixel buffer filled with the solid color
+     */
+    private Frame clear() {
+        var pixelBuffer = pool.getIntBuffer(width, height);
+        // The opaque color is the same whether premultiplied or not.
+        Arrays.fill(pixelBuffer.getBuffer().array(), SOLID);
+        return new Frame(pool.getImage(pixelBuffer), pixelBuffer, null,
+                () -> pixelBuffer.updateBuffer((b) -> null));
+    }
+
+    /**
+     * Converts the image like {@code javafx.embed.swing.SwingFXUtils} using an
+     * intermediate {@code BufferedImage} of type TYPE_INT_ARGB_PRE.
+     *
+     * @return the image to be written from the intermediate image
+     */
+    private Frame oldDraw() {
+        System.out.println("oldDraw: Draws to intermediate AWT image; writes to JavaFX image.");
+        var copy = drawCopy();
+        var image = pool.getImage(width, height);
 
         int[] data = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
-        image.getPixelWriter().setPixels(0, 0, width, height,
-                PixelFormat.getIntArgbPreInstance(), data, 0, width);
-        view.setImage(image);
+        return new Frame(image, image, copy, () -> image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbPreInstance(), data, 0, width));
     }
 
     /**
      * Converts the image using an intermediate integer array.
+     *
+     * @return the image to be written from the intermediate array
      */
-    private void oldCopy() {
+    private Frame oldCopy() {
         System.out.println("oldCopy: Copies to intermediate array; writes to JavaFX image.");
-        var array = new int[width * height];
-        var image = new WritableImage(width, height);
+        var copy = pool.getBufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        var image = pool.getImage(width, height);
 
         // Returns the pixels in the default RGB color model (TYPE_INT_ARGB).
+        int[] array = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
         awtImage.getRGB(0, 0, width, height, array, 0, width);
-        image.getPixelWriter().setPixels(0, 0, width, height,
-                PixelFormat.getIntArgbInstance(), array, 0, width);
-        view.setImage(image);
+        return new Frame(image, image, copy, () -> image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(), array, 0, width));
     }
 
     /**
      * Converts the image using the new {@link PixelBuffer} class and an
      * intermediate {@code BufferedImage} of type TYPE_INT_ARGB_PRE.
+     *
+     * @return the pixel buffer holding the copy of the intermediate image
      */
-    private void newDraw() {
+    private Frame newDraw() {
         System.out.println("newDraw: Draws to intermediate AWT image; updates pixel buffer.");
-        var copy = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
-        var graphics = copy.createGraphics();
+        var copy = drawCopy();
+
+        // Gets a PixelBuffer with the BYTE_BGRA_PRE pixel format.
+        var pixelBuffer = pool.getByteBuffer(width, height);
+
+        int[] data = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        pixelBuffer.getBuffer().clear().asIntBuffer().put(data);
+        return new Frame(pool.getImage(pixelBuffer), pixelBuffer, copy,
+                () -> pixelBuffer.updateBuffer((b) -> null));
+    }
+
+    /**
+     * Converts the image using the new {@link PixelBuffer} class by drawing
+     * into an AWT image that shares the integer array of its buffer.
+     *
+     * @return the shared image drawn into
+     */
+    private Frame zeroDraw() {
+        System.out.println("zeroDraw: Draws directly to integer pixel buffer.");
+        var shared = pool.getSharedImage(width, height);
+        var graphics = shared.getAwtImage().createGraphics();
+        graphics.setComposite(AlphaComposite.Src);
         graphics.drawImage(awtImage, 0, 0, null);
         graphics.dispose();
+        return new Frame(shared.getFxImage(), shared, null,
+                () -> shared.getPixelBuffer().updateBuffer((b) -> null));
+    }
 
-        // Creates a PixelBuffer with the BYTE_BGRA_PRE pixel format.
-        var byteBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES);
-        var pixelFormat = PixelFormat.getByteBgraPreInstance();
-        var pixelBuffer = new PixelBuffer<>(width, height, byteBuffer, pixelFormat);
-        var image = new WritableImage(pixelBuffer);
+    /**
+     * Converts the image using the new {@link PixelBuffer} class by
+     * premultiplying the pixels directly into its byte buffer.
+     *
+     * @return the pixel buffer converted into
+     */
+    private Frame newCopy() {
+        System.out.println("newCopy: Premultiplies directly to byte pixel buffer.");
 
-        int[] data = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
-        byteBuffer.order(ByteOrder.nativeOrder()).asIntBuffer().put(data);
-        pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
-        view.setImage(image);
+        // Gets a PixelBuffer with the BYTE_BGRA_PRE pixel format.
+        var pixelBuffer = pool.getByteBuffer(width, height);
+
+        // Reads the raster of the image and writes BGRA bytes in one pass.
+        BandedConverter.convert(awtImage, pixelBuffer.getBuffer().clear().asIntBuffer());
+        return new Frame(pool.getImage(pixelBuffer), pixelBuffer, null,
+                () -> pixelBuffer.updateBuffer((b) -> null));
     }
 
     /**
-     * Converts the image using the new {@link PixelBuffer} class and an
-     * intermediate integer array.
+     * Converts the image by premultiplying the pixels just once directly into
+     * the integer array that backs the {@link PixelBuffer<IntBuffer>}.
+     *
+     * @return the pixel buffer converted into
      */
-    private void newCopy() {
-        System.out.println("newCopy: Copies to intermediate array; updates pixel buffer (wrong alpha).");
-        var array = new int[width * height];
+    private Frame oneCopy() {
+        System.out.println("oneCopy: Premultiplies directly to integer pixel buffer.");
 
-        // Creates a PixelBuffer with the BYTE_BGRA_PRE pixel format.
-        var byteBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES);
-        var pixelFormat = PixelFormat.getByteBgraPreInstance();
-        var pixelBuffer = new PixelBuffer<>(width, height, byteBuffer, pixelFormat);
-        var image = new WritableImage(pixelBuffer);
+        // Gets a PixelBuffer with the INT_ARGB_PRE pixel format.
+        var pixelBuffer = pool.getIntBuffer(width, height);
 
-        // Returns the pixels in the default RGB color model (TYPE_INT_ARGB).
-        awtImage.getRGB(0, 0, width, height, array, 0, width);
-        byteBuffer.order(ByteOrder.nativeOrder()).asIntBuffer().put(array);
-        pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
-        view.setImage(image);
+        // Reads the raster of the image and writes ARGB integers in one pass.
+        BandedConverter.convert(awtImage, pixelBuffer.getBuffer().clear());
+        return new Frame(pool.getImage(pixelBuffer), pixelBuffer, null,
+                () -> pixelBuffer.updateBuffer((b) -> null));
     }
 
     /**
-     * Converts the image by copying the pixels just once directly into the
-     * integer array that backs the {@link PixelBuffer<IntBuffer>}.
+     * Frees the pooled items not in use once the scene has been rendered
+     * without them. The renderer may still be drawing the previous pulse when
+     * an image is replaced, so only the items released before this call are
+     * freed, on the second pulse after it.
      */
-    private void oneCopy() {
-        System.out.println("oneCopy: Copies directly to integer pixel buffer (wrong alpha).");
+    private void trimLater() {
+        long mark = pool.mark();
+        new AnimationTimer() {
+            private int pulses;
 
-        // Creates a PixelBuffer with the INT_ARGB_PRE pixel format.
-        var intBuffer = IntBuffer.allocate(width * height);
-        var pixelFormat = PixelFormat.getIntArgbPreInstance();
-        var pixelBuffer = new PixelBuffer<>(width, height, intBuffer, pixelFormat);
-        var image = new WritableImage(pixelBuffer);
+            @Override
+            public void handle(long now) {
+                if (++pulses == 2) {
+                    stop();
+                    pool.trim(mark);
+                    System.out.println(arena.summary());
+                }
+            }
+        }.start();
+    }
 
-        // Returns the pixels in the default RGB color model (TYPE_INT_ARGB).
-        awtImage.getRGB(0, 0, width, height, intBuffer.array(), 0, width);
-        pixelBuffer.updateBuffer((b) -> new Rectangle2D(0, 0, width, height));
-        view.setImage(image);
+    /**
+     * Shows the image reduced by the given scale using the level of its
+     * mipmap pyramid closest in size, so that only that level is uploaded and
+     * the renderer reduces it by no more than half. The scale also applies to
+     * the images shown by the conversion methods, which are reduced from full
+     * size. The pyramid is built on the worker thread the first time, and the
+     * level is shown unless another method or zoom was requested meanwhile.
+     *
+     * @param zoom the ratio of the displayed size to the full size
+     */
+    private void zoom(double zoom) {
+        long request = ++requests;
+        double minimum = 1.0 / (1 << (MipmapPyramid.getLevelCount(width, height) - 1));
+        scale = Math.max(minimum, Math.min(zoom, 1));
+        double shownScale = scale;
+        BufferedImage source = awtImage;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = worker.submit(() -> {
+            var pyramid = MipmapPyramid.of(source);
+            Platform.runLater(() -> showLevel(pyramid, shownScale, request));
+        });
+    }
+
+    private void showLevel(MipmapPyramid pyramid, double levelScale, long request) {
+        if (request != requests) {
+            return;
+        }
+        int level = pyramid.getLevel(levelScale);
+        var image = pyramid.getImage(level);
+        System.out.println(String.format("mipmap: Shows level %d (%.0f x %.0f) at scale %.3f.",
+                level, image.getWidth(), image.getHeight(), levelScale));
+        view.setSmooth(true);
+        view.setFitWidth(width * levelScale);
+        view.setFitHeight(height * levelScale);
+        show(image, null);
+        trimLater();
     }
 
     private void onKeyPressed(KeyEvent event) {
         KeyCode code = event.getCode();
         if (code == KeyCode.SPACE) {
             event.consume();
-            Platform.runLater(methods.get(index));
+            if (awtImage == null) {
+                System.out.println("Loading " + IMAGE + " ...");
+                return;
+            }
+            long request = ++requests;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            Callable<Frame> method = methods.get(index);
             if (index == 0) {
                 System.out.println();
             }
+            pending = worker.submit(() -> {
+                try {
+                    Frame result = method.call();
+                    Platform.runLater(() -> publish(result, request));
+                } catch (Exception e) {
+                    System.err.println(e);
+                }
+            });
             index = index == methods.size() - 1 ? 0 : index + 1;
+        } else if (code == KeyCode.EQUALS || code == KeyCode.PLUS || code == KeyCode.ADD) {
+            event.consume();
+            if (awtImage != null) {
+                zoom(scale * ZOOM);
+            }
+        } else if (code == KeyCode.MINUS || code == KeyCode.SUBTRACT) {
+            event.consume();
+            if (awtImage != null) {
+                zoom(scale / ZOOM);
+            }
         } else if (code == KeyCode.Q || code == KeyCode.ESCAPE) {
             event.consume();
             Platform.exit();
@@ -253,6 +467,14 @@ public class Viewer extends Application {
         stage.setTitle(TITLE);
         stage.setScene(scene);
         stage.show();
+        view.setImage(loader.getImage());
+        loader.start((image) -> awtImage = image);
+    }
+
+    @Override
+    public void stop() {
+        worker.shutdownNow();
+        System.out.println(arena.summary());
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A headless benchmark of {@link YuvConverter}, converting frames into a
+ * direct buffer in the BYTE_BGRA_PRE format for each layout, serially and in
+ * parallel. Run with a command like the following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java -Djava.awt.headless=true \
+ *     -cp dist/pixel-buffer.jar:$HOME/lib/javafx-sdk-15/lib/javafx.graphics.jar \
+ *     YuvBenchmark [WIDTHxHEIGHT] [FILE LAYOUT]
+ * }</pre>
+ * The frames are 1920 by 1080 by default and are generated with a moving
+ * pattern unless a file of raw frames and its layout, I420 or NV12, are
+ * given. For each case, the benchmark reports the frames converted per
+ * second, the rate of allocation on the benchmark thread, and the ratio of
+ * the frame rate to 60 frames per second, which must be at least one to keep
+ * up with video at that rate. The warmup and measurement times default to one
+ * and two seconds and can be set in milliseconds with the system properties
+ * {@code benchmark.warmup} and {@code benchmark.time}.
+ */
+public class YuvBenchmark {
+
+    private static final long WARMUP = Long.getLong("benchmark.warmup", 1000);
+    private static final long TIME = Long.getLong("benchmark.time", 2000);
+    private static final int FRAME_COUNT = 8;
+    private static final int TARGET_RATE = 60;
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static YuvSource generate(YuvSource.Layout layout, int width, int height) {
+        int frameSize = layout.getFrameSize(width, height);
+        int lumaSize = width * height;
+        var data = ByteBuffer.allocate(frameSize * FRAME_COUNT);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            int base = i * frameSize;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    data.put(base + y * width + x, (byte) (16 + (x + y + 8 * i) % 220));
+                }
+            }
+            for (int j = lumaSize; j < frameSize; j++) {
+                data.put(base + j, (byte) (64 + (j * 7 + 16 * i) % 128));
+            }
+        }
+        return new YuvSource(data, layout, width, height);
+    }
+
+    private static void run(YuvSource source, boolean parallel, IntBuffer dst) throws IOException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int frames = source.getFrameCount();
+        long threadId = Thread.currentThread().getId();
+        long end = System.nanoTime() + WARMUP * 1_000_000;
+        int index = 0;
+        while (System.nanoTime() < end) {
+            YuvConverter.convert(source.read(index), source.getLayout(), width, height, dst, parallel);
+            index = index == frames - 1 ? 0 : index + 1;
+        }
+        long count = 0;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        end = start + TIME * 1_000_000;
+        long now = start;
+        while (now < end) {
+            YuvConverter.convert(source.read(index), source.getLayout(), width, height, dst, parallel);
+            index = index == frames - 1 ? 0 : index + 1;
+            count++;
+            now = System.nanoTime();
+        }
+        allocated = THREADS.getThreadAllocatedBytes(threadId) - allocated;
+        double seconds = (now - start) / 1e9;
+        double rate = count / seconds;
+        System.out.println(String.format("%-6s %-9s %-10s %10.1f %12.1f %10.2f",
+                source.getLayout(), width + "x" + height, parallel ? "parallel" : "serial",
+                rate, allocated / seconds / MEGABYTE, rate / TARGET_RATE));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int width = 1920;
+        int height = 1080;
+        if (args.length > 0) {
+            String[] size = args[0].split("x");
+            width = Integer.parseInt(size[0]);
+            height = Integer.parseInt(size[1]);
+        }
+        var buffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer dst = buffer.asIntBuffer();
+        System.out.println(String.format("Parallelism %d", ForkJoinPool.getCommonPoolParallelism()));
+        System.out.println(String.format("%-6s %-9s %-10s %10s %12s %10s",
+                "Layout", "Size", "Mode", "Frames/s", "Alloc MB/s", "x 60 fps"));
+        if (args.length > 2) {
+            try (var source = new YuvSource(Path.of(args[1]), YuvSource.Layout.valueOf(args[2]), width, height)) {
+                run(source, false, dst);
+                run(source, true, dst);
+            }
+        } else {
+            for (YuvSource.Layout layout : YuvSource.Layout.values()) {
+                var source = generate(layout, width, height);
+                run(source, false, dst);
+                run(source, true, dst);
+            }
+        }
+    }
+}
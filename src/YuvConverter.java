@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts YUV 4:2:0 frames from a {@link YuvSource} into the buffer of a
+ * {@code PixelBuffer} in the BYTE_BGRA_PRE format, passed as a view of the
+ * buffer as integers in little-endian byte order. The colors are converted
+ * with the BT.601 matrix for limited-range video, in the integer arithmetic
+ * of eight fractional bits used by most software decoders. Each chroma sample
+ * covers a block of two-by-two pixels, so its contribution to each color is
+ * computed once for the four pixels. The frames of video are opaque, so the
+ * pixels are the same premultiplied or not.
+ * <p>
+ * Like {@link BandedConverter}, large frames can be converted in bands of
+ * rows on the common fork-join pool, each band writing its own slice of the
+ * buffer. The rows of each band are converted into a small array kept by the
+ * thread and copied into the buffer with a single bulk put.
+ */
+public final class YuvConverter {
+
+    /**
+     * The number of pixels below which a band is not split any further.
+     */
+    private static final int BAND_PIXELS = 64 * 1024;
+
+    private static class Scratch {
+
+        private byte[] y0 = new byte[0];
+        private byte[] y1 = new byte[0];
+        private byte[] u = new byte[0];
+        private byte[] v = new byte[0];
+        private int[] out = new int[0];
+
+        Scratch size(int width, int chromaWidth) {
+            if (y0.length < width) {
+                y0 = new byte[width];
+                y1 = new byte[width];
+                out = new int[2 * width];
+            }
+            if (u.length < 2 * chromaWidth) {
+                u = new byte[2 * chromaWidth];
+                v = new byte[chromaWidth];
+            }
+            return this;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteBuffer frame;
+        private final transient YuvSource.Layout layout;
+        private final transient IntBuffer dst;
+        private final int width;
+        private final int height;
+        private final int minY;
+        private final int maxY;
+
+        Band(ByteBuffer frame, YuvSource.Layout layout, int width, int height, int minY, int maxY, IntBuffer dst) {
+            this.frame = frame;
+            this.layout = layout;
+            this.width = width;
+            this.height = height;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.dst = dst;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = maxY - minY;
+            if (rows < 4 || (long) rows * width <= BAND_PIXELS) {
+                convert(frame, layout, width, height, minY, maxY, dst);
+            } else {
+                int midY = minY + rows / 4 * 2;
+                invokeAll(new Band(frame, layout, width, height, minY, midY, dst),
+                        new Band(frame, layout, width, height, midY, maxY, dst));
+            }
+        }
+    }
+
+    private YuvConverter() {
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    /**
+     * Converts a frame into a buffer of pixels, in parallel if requested and
+     * the frame is large enough to benefit.
+     *
+     * @param frame the frame, from the position of the buffer
+     * @param layout the layout of the planes in the frame
+     * @param width the width of the frame in pixels
+     * @param height the height of the frame in pixels
+     * @param dst the target buffer in the INT_ARGB_PRE format, or a view of a
+     * buffer in the BYTE_BGRA_PRE format, with room for all of the pixels in
+     * the frame
+     * @param parallel {@code true} to convert bands of rows on the common
+     * fork-join pool; {@code false} to convert on the calling thread
+     */
+    public static void convert(ByteBuffer frame, YuvSource.Layout layout, int width, int height,
+            IntBuffer dst, boolean parallel) {
+        if (!parallel || (long) width * height < BandedConverter.PARALLEL_PIXELS
+                || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            convert(frame, layout, width, height, 0, height, dst);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Band(frame, layout, width, height, 0, height, dst));
+        }
+    }
+
+    /**
+     * Converts a band of rows of a frame into the same rows of a buffer of
+     * pixels. Bands that do not overlap can be converted into the same buffer
+     * concurrently.
+     *
+     * @param frame the frame, from the position of the buffer
+     * @param layout the layout of the planes in the frame
+     * @param width the width of the frame in pixels
+     * @param height the height of the frame in pixels
+     * @param minY the first row of the band, which must be even
+     * @param maxY the row after the last row of the band
+     * @param dst the target buffer in the INT_ARGB_PRE format, or a view of a
+     * buffer in the BYTE_BGRA_PRE format, with room for all of the pixels in
+     * the frame
+     */
+    public static void convert(ByteBuffer frame, YuvSource.Layout layout, int width, int height,
+            int minY, int maxY, IntBuffer dst) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int lumaSize = width * height;
+        int chromaSize = chromaWidth * chromaHeight;
+        boolean planar = layout == YuvSource.Layout.I420;
+        boolean heap = frame.hasArray();
+        byte[] src = heap ? frame.array() : null;
+        int base = heap ? frame.arrayOffset() + frame.position() : frame.position();
+        Scratch scratch = SCRATCH.get().size(width, chromaWidth);
+        int[] out = dst.hasArray() ? dst.array() : scratch.out;
+        IntBuffer target = dst.duplicate();
+
+        for (int y = minY; y < maxY; y += 2) {
+            int rows = Math.min(2, height - y);
+            int cy = y / 2;
+            int y0Pos = y * width;
+            int y1Pos = y0Pos + (rows - 1) * width;
+            int uPos = planar ? lumaSize + cy * chromaWidth : lumaSize + cy * 2 * chromaWidth;
+            int vPos = planar ? lumaSize + chromaSize + cy * chromaWidth : uPos + 1;
+            byte[] y0 = src;
+            byte[] y1 = src;
+            byte[] u = src;
+            byte[] v = src;
+            if (heap) {
+                y0Pos += base;
+                y1Pos += base;
+                uPos += base;
+                vPos += base;
+            } else {
+                y0 = scratch.y0;
+                y1 = scratch.y1;
+                u = scratch.u;
+                v = planar ? scratch.v : scratch.u;
+                frame.get(base + y0Pos, y0, 0, width);
+                frame.get(base + y1Pos, y1, 0, width);
+                if (planar) {
+                    frame.get(base + uPos, u, 0, chromaWidth);
+                    frame.get(base + vPos, v, 0, chromaWidth);
+                    vPos = 0;
+                } else {
+                    frame.get(base + uPos, u, 0, 2 * chromaWidth);
+                    vPos = 1;
+                }
+                y0Pos = 0;
+                y1Pos = 0;
+                uPos = 0;
+            }
+            int step = planar ? 1 : 2;
+            int out0 = dst.hasArray() ? dst.arrayOffset() + y * width : 0;
+            int out1 = out0 + (rows - 1) * width;
+
+            for (int x = 0, c = 0; x < width; x += 2, c += step) {
+                int d = (u[uPos + c] & 0xff) - 128;
+                int e = (v[vPos + c] & 0xff) - 128;
+                int rv = 409 * e + 128;
+                int gv = -100 * d - 208 * e + 128;
+                int bv = 516 * d + 128;
+
+                int l = 298 * ((y0[y0Pos + x] & 0xff) - 16);
+                out[out0 + x] = 0xff000000 | clamp((l + rv) >> 8) << 16
+                        | clamp((l + gv) >> 8) << 8 | clamp((l + bv) >> 8);
+                l = 298 * ((y1[y1Pos + x] & 0xff) - 16);
+                out[out1 + x] = 0xff000000 | clamp((l + rv) >> 8) << 16
+                        | clamp((l + gv) >> 8) << 8 | clamp((l + bv) >> 8);
+                if (x + 1 < width) {
+                    l = 298 * ((y0[y0Pos + x + 1] & 0xff) - 16);
+                    out[out0 + x + 1] = 0xff000000 | clamp((l + rv) >> 8) << 16
+                            | clamp((l + gv) >> 8) << 8 | clamp((l + bv) >> 8);
+                    l = 298 * ((y1[y1Pos + x + 1] & 0xff) - 16);
+                    out[out1 + x + 1] = 0xff000000 | clamp((l + rv) >> 8) << 16
+                            | clamp((l + gv) >> 8) << 8 | clamp((l + bv) >> 8);
+                }
+            }
+            if (!dst.hasArray()) {
+                target.position(y * width);
+                target.put(out, 0, rows * width);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+
+/**
+ * A JavaFX application to play a file of raw YUV frames through a
+ * {@link SwapChain} of direct byte buffers. Run with a command like the
+ * following:
+ * <pre>{@code
+ * $HOME/opt/jdk-14.0.1/bin/java \
+ *     --add-modules=javafx.graphics \
+ *     --module-path=$HOME/lib/javafx-sdk-15/lib \
+ *     -Dyuv.file=video.yuv -Dyuv.size=1920x1080 -Dyuv.layout=I420 \
+ *     -cp dist/pixel-buffer.jar YuvPlayer
+ * }</pre>
+ * A file of frames can be made from any video with a command like
+ * {@code ffmpeg -i video.mp4 -f rawvideo -pix_fmt yuv420p video.yuv}, or
+ * {@code -pix_fmt nv12} for the NV12 layout. The system property
+ * {@code yuv.rate} sets the frame rate, 30 frames per second by default, and
+ * {@code yuv.parallel=true} converts the frames in parallel. Press SPACE to
+ * pause the video, H to print the frame statistics, and Q to quit.
+ */
+public class YuvPlayer extends Application {
+
+    private static final String TITLE = "YuvPlayer";
+    private static final String FILE = System.getProperty("yuv.file", "video.yuv");
+    private static final String SIZE = System.getProperty("yuv.size", "1920x1080");
+    private static final String LAYOUT = System.getProperty("yuv.layout", "I420");
+    private static final int RATE = Integer.getInteger("yuv.rate", 30);
+    private static final boolean PARALLEL = Boolean.getBoolean("yuv.parallel");
+    private static final int BUFFER_COUNT = 3;
+
+    private final YuvSource source;
+    private final int width;
+    private final int height;
+    private final ImageView view;
+    private final StackPane root;
+    private final FrameStats stats;
+
+    private AnimationTimer animation;
+    private boolean isRunning;
+
+    public YuvPlayer() throws IOException {
+        String[] size = SIZE.split("x");
+        source = new YuvSource(Path.of(FILE), YuvSource.Layout.valueOf(LAYOUT),
+                Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        width = source.getWidth();
+        height = source.getHeight();
+        view = new ImageView();
+        view.setPreserveRatio(true);
+        root = new StackPane(view);
+        view.fitWidthProperty().bind(root.widthProperty());
+        view.fitHeightProperty().bind(root.heightProperty());
+        stats = new FrameStats();
+        stats.register();
+    }
+
+    private void toggleTimer() {
+        if (isRunning) {
+            animation.stop();
+            isRunning = false;
+        } else {
+            animation.start();
+            isRunning = true;
+        }
+    }
+
+    private void onKeyPressed(KeyEvent event) {
+        KeyCode code = event.getCode();
+        if (code == KeyCode.SPACE) {
+            event.consume();
+            toggleTimer();
+        } else if (code == KeyCode.H) {
+            event.consume();
+            System.out.println(stats.summary());
+        } else if (code == KeyCode.Q || code == KeyCode.ESCAPE) {
+            event.consume();
+            Platform.exit();
+        }
+    }
+
+    @Override
+    public void init() {
+
+        /*
+         * Converts each frame that is due into the back buffer of the swap
+         * chain and publishes the entire frame. The frames are paced by the
+         * frame period in nanoseconds rather than by a FramePacer, which
+         * rounds to whole milliseconds and slows down short GIF delays. Each
+         * deadline is counted from the one before, starting over from the
+         * current pulse when the video falls more than a frame behind.
+         */
+        animation = new AnimationTimer() {
+            private final SwapChain<ByteBuffer> swapChain = SwapChain.ofBytes(width, height, BUFFER_COUNT);
+            private final long period = 1_000_000_000L / Math.max(1, RATE);
+
+            private int index;
+            private boolean started;
+            private long deadline;
+
+            @Override
+            public void start() {
+                super.start();
+                started = false;
+                stats.start(String.format("%s %dx%d", source.getLayout(), width, height));
+            }
+
+            @Override
+            public void handle(long now) {
+                stats.pulse(now);
+                if (started && now < deadline) {
+                    return;
+                }
+                try {
+                    long start = System.nanoTime();
+                    YuvConverter.convert(source.read(index), source.getLayout(), width, height,
+                            swapChain.getBuffer().asIntBuffer(), PARALLEL);
+                    long converted = System.nanoTime();
+                    view.setImage(swapChain.swap());
+                    stats.record(start, converted, System.nanoTime(), (long) width * height * Integer.BYTES);
+                    deadline = started && now - deadline < period ? deadline + period : now + period;
+                    started = true;
+                } catch (IOException e) {
+                    System.err.println(e);
+                    stop();
+                }
+                index = index == source.getFrameCount() - 1 ? 0 : index + 1;
+            }
+        };
+    }
+
+    @Override
+    public void start(Stage stage) {
+        Scene scene = new Scene(root, 960, 540);
+        scene.addEventHandler(KeyEvent.KEY_PRESSED, this::onKeyPressed);
+        stage.setTitle(TITLE);
+        stage.setScene(scene);
+        stage.show();
+        animation.start();
+        isRunning = true;
+    }
+
+    @Override
+    public void stop() throws IOException {
+        animation.stop();
+        isRunning = false;
+        source.close();
+        System.out.println(stats.summary());
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2019-2020 John Neffenger
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source of raw video frames in one of the planar YUV 4:2:0 layouts
+ * produced by video decoders and cameras, read from a file or from a buffer
+ * in memory. A file holds the frames one after another with no header, as
+ * written by {@code ffmpeg -f rawvideo}. The frames are converted for a
+ * {@code PixelBuffer} by {@link YuvConverter}.
+ */
+public class YuvSource implements AutoCloseable {
+
+    /**
+     * The layout of the planes of a YUV 4:2:0 frame.
+     */
+    public enum Layout {
+
+        /**
+         * The full Y plane followed by the quarter-size U and V planes.
+         */
+        I420,
+        /**
+         * The full Y plane followed by one plane of interleaved U and V
+         * samples.
+         */
+        NV12;
+
+        /**
+         * Gets the size of a frame.
+         *
+         * @param width the width of the frame in pixels
+         * @param height the height of the frame in pixels
+         * @return the number of bytes in a frame
+         */
+        public int getFrameSize(int width, int height) {
+            return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+        }
+    }
+
+    private final Layout layout;
+    private final int width;
+    private final int height;
+    private final int frameSize;
+    private final int frameCount;
+    private final FileChannel channel;
+    private final ByteBuffer data;
+    private final ByteBuffer frame;
+
+    /**
+     * Opens a file of raw frames.
+     *
+     * @param file the file of frames
+     * @param layout the layout of each frame
+     * @param width the width of the frames in pixels
+     * @param height the height of the frames in pixels
+     * @throws IOException if an error occurs opening the file, or if it
+     * holds no complete frame
+     */
+    public YuvSource(Path file, Layout layout, int width, int height) throws IOException {
+        this.layout = layout;
+        this.width = width;
+        this.height = height;
+        frameSize = layout.getFrameSize(width, height);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        frameCount = (int) (channel.size() / frameSize);
+        if (frameCount == 0) {
+            channel.close();
+            throw new IOException("No frames in file: " + file);
+        }
+        data = null;
+        frame = ByteBuffer.allocate(frameSize);
+    }
+
+    /**
+     * Wraps a buffer of raw frames.
+     *
+     * @param data the buffer of frames, from its position to its limit
+     * @param layout the layout of each frame
+     * @param width the width of the frames in pixels
+     * @param height the height of the frames in pixels
+     * @throws IllegalArgumentException if the buffer holds no complete frame
+     */
+    public YuvSource(ByteBuffer data, Layout layout, int width, int height) {
+        this.layout = layout;
+        this.width = width;
+        this.height = height;
+        frameSize = layout.getFrameSize(width, height);
+        frameCount = data.remaining() / frameSize;
+        if (frameCount == 0) {
+            throw new IllegalArgumentException("No frames in buffer");
+        }
+        channel = null;
+        this.data = data.slice();
+        frame = null;
+    }
+
+    /**
+     * Gets the layout of the frames.
+     *
+     * @return the layout of the planes in each frame
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the width of the frames.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the frames.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of complete frames in the source.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Reads a frame. A frame read from a file is valid until the next call
+     * to read, which reuses its buffer.
+     *
+     * @param index the index of the frame
+     * @return the buffer of the frame, from position zero to its size
+     * @throws IOException if an error occurs reading the file
+     */
+    public ByteBuffer read(int index) throws IOException {
+        long offset = (long) index * frameSize;
+        if (data != null) {
+            return data.duplicate().position((int) offset).limit((int) offset + frameSize).slice();
+        }
+        frame.clear();
+        while (frame.hasRemaining()) {
+            if (channel.read(frame, offset + frame.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return frame.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}